@@ -0,0 +1,54 @@
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The images the game uses, each read from its file and copied into the format of the screen only once, then shared
+ * by every map and player. Images can be loaded on a background thread ahead of time, such as while players wait in
+ * the lobby, so starting a game does not wait on reading files
+ */
+public class Assets {
+
+    // images already loaded, by their file path
+    private static final ConcurrentHashMap<String, BufferedImage> IMAGES = new ConcurrentHashMap<>();
+
+    /**
+     * The image at the path, loading it if it has not been loaded yet. If another thread is loading the same image,
+     * waits for it rather than reading the file again. The image is shared, so it should not be drawn on
+     * @param path the path of the image file
+     * @return the image in the format of the screen, or null if it could not be read
+     */
+    public static BufferedImage getImage(final String path){
+        return IMAGES.computeIfAbsent(path, Assets::readImage);
+    }
+
+    /**
+     * Starts loading the images on a background thread, so they are ready by the time they are needed
+     * @param paths the paths of the image files
+     */
+    public static void preload(final String... paths){
+        Thread preload = new Thread(() -> {
+            for (String path : paths){
+                getImage(path);
+            }
+        }, "asset-preload");
+        preload.setDaemon(true);
+        preload.start();
+    }
+
+    /**
+     * Reads an image file and copies it into the format of the screen
+     * @param path the path of the image file
+     * @return the image, or null if it could not be read, so it is tried again the next time it is asked for
+     */
+    private static BufferedImage readImage(final String path){
+        try {
+            return Surfaces.toCompatible(ImageIO.read(new File(path)));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+}
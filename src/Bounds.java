@@ -1,156 +1,185 @@
-import java.awt.*;
-import java.awt.geom.Line2D;
-import java.util.ArrayList;
-
-
 /**
- * Represents the bounds of an element in the game, both with a polygon and a rectangle.
- * The rectangle is used for quick intersection checking, and the polygon is used if the rectangle intersects.
+ * Represents the bounds of a rotated element in the game as an oriented box. The axis-aligned box around it is
+ * used for quick checking, and the separating axis test on the oriented box is only used if the quick check passes.
+ * The copies of the box wrapped around the map are found when the box moves or turns, not when it is checked
  */
 public class Bounds {
 
+    // most copies of the box needed to cover wrapping around both sides of the map, including the box itself
+    private static final int MAX_COPIES = 4;
+    // copies are also made when the box is this close to a side, so moves that cross the side still reach it
+    private static final int WRAP_MARGIN = 64;
+
+    // the box before rotating, relative to the top left of the element
+    private final float boxX;
+    private final float boxY;
+    private final float halfWidth;
+    private final float halfHeight;
+    // the point the box rotates around, relative to the top left of the element
+    private final float anchorX;
+    private final float anchorY;
+
+    // the current center of the box, its axes, and the half size of the axis-aligned box around it
+    private float centerX;
+    private float centerY;
+    private float cos = 1;
+    private float sin = 0;
+    private float extentX;
+    private float extentY;
+    // the centers of the box and its copies wrapped around the map
+    private final float[] copyX = new float[MAX_COPIES];
+    private final float[] copyY = new float[MAX_COPIES];
+    private int numCopies = 0;
+
     /**
-     * Gives all of the rectangles associated with the given bounds, taking into account wrapping
-     * @param b the bounds to find all rectangle for
-     * @return all of the rectangles associated with the bounds, including wrapping
+     * @param boxX x coordinate of the box before rotating, relative to the top left of the element
+     * @param boxY y coordinate of the box before rotating, relative to the top left of the element
+     * @param boxWidth width of the box
+     * @param boxHeight height of the box
+     * @param anchorX x coordinate of the point the box rotates around, relative to the top left of the element
+     * @param anchorY y coordinate of the point the box rotates around, relative to the top left of the element
      */
-    private static ArrayList<Rectangle> getAllRects(final Bounds b){
-        ArrayList<Rectangle> rects = new ArrayList<>();
-        rects.add(b.getRect());
-        // get the x wrap rectangle by subtracting the width
-        if (b.doesWrapX()){
-            Rectangle xwrap = new Rectangle(b.getRect().x, b.getRect().y, b.getRect().width, b.getRect().height);
-            xwrap.x -= Map.WIDTH;
-            rects.add(xwrap);
-        }
-        // get the y wrap rectangle by subtracting the height
-        if (b.doesWrapY()){
-            Rectangle ywrap = new Rectangle(b.getRect().x, b.getRect().y, b.getRect().width, b.getRect().height);
-            ywrap.y -= Map.HEIGHT;
-            rects.add(ywrap);
-        }
-        // if both wraps, subtract both width and height
-        if (b.doesWrapX() && b.doesWrapY()){
-            Rectangle bothwrap = new Rectangle(b.getRect().x, b.getRect().y, b.getRect().width, b.getRect().height);
-            bothwrap.x -= Map.WIDTH;
-            bothwrap.y -= Map.HEIGHT;
-            rects.add(bothwrap);
-        }
-        return rects;
+    public Bounds(final int boxX, final int boxY, final int boxWidth, final int boxHeight, final int anchorX, final int anchorY){
+        this.boxX = boxX;
+        this.boxY = boxY;
+        this.halfWidth = boxWidth / 2f;
+        this.halfHeight = boxHeight / 2f;
+        this.anchorX = anchorX;
+        this.anchorY = anchorY;
+        setPose(0, 0, 0);
     }
 
     /**
-     * Returns a list of all of the polygon bounds associated with a bounds, taking into account wrapping around
-     * x and y axis
-     * @param b the bounds to find all of the polygon bounds for
-     * @return a list of all of the polygons for these bounds, taking into account wrapping
+     * Creates a box with the same shape as another, at the top left of the map and not turned
+     * @param other the box to copy the shape of
      */
-    private static ArrayList<ArrayList<Line2D.Float>> getAllPolygons(final Bounds b){
-        ArrayList<ArrayList<Line2D.Float>> polys = new ArrayList<>();
-        polys.add(b.getPolygon());
-        if (b.doesWrapX()){
-            // create new bounds that are shifted by the width
-            ArrayList<Line2D.Float> wrapX = new ArrayList<>();
-            for (Line2D.Float line : b.getPolygon()){
-                wrapX.add(new Line2D.Float(line.x1 - Map.WIDTH, line.y1, line.x2 - Map.WIDTH, line.y2));
-            }
-            polys.add(wrapX);
-        }
-        if (b.doesWrapY()){
-            // create new bounds shifted by the height
-            ArrayList<Line2D.Float> wrapY = new ArrayList<>();
-            for (Line2D.Float line : b.getPolygon()){
-                wrapY.add(new Line2D.Float(line.x1, line.y1 - Map.HEIGHT, line.x2, line.y2 - Map.HEIGHT));
-            }
-            polys.add(wrapY);
-        }
-        if (b.doesWrapX() && b.doesWrapY()){
-            // create new bounds shifted by both width and height
-            ArrayList<Line2D.Float> bothWrap = new ArrayList<>();
-            for (Line2D.Float line : b.getPolygon()){
-                bothWrap.add(new Line2D.Float(line.x1 - Map.WIDTH, line.y1 - Map.HEIGHT, line.x2 - Map.WIDTH, line.y2 - Map.HEIGHT));
-            }
-            polys.add(bothWrap);
-        }
-        return polys;
+    public Bounds(final Bounds other){
+        this.boxX = other.boxX;
+        this.boxY = other.boxY;
+        this.halfWidth = other.halfWidth;
+        this.halfHeight = other.halfHeight;
+        this.anchorX = other.anchorX;
+        this.anchorY = other.anchorY;
+        setPose(0, 0, 0);
     }
 
-    private Rectangle boundRect;
-    private ArrayList<Line2D.Float> boundPolygon;
-    // if the bounds wrap in the x or y directions, then this must be known to handle collisions properly
-    private boolean wrapsX;
-    private boolean wrapsY;
+    /**
+     * Moves and turns the box to match the element, and finds the copies of it wrapped around the map
+     * @param x x coordinate of the top left of the element
+     * @param y y coordinate of the top left of the element
+     * @param angle the angle, in radians, the element is rotated by
+     */
+    public void setPose(final int x, final int y, final double angle){
+        cos = (float) Math.cos(angle);
+        sin = (float) Math.sin(angle);
+        // rotate the center of the box around the anchor
+        float offsetX = boxX + halfWidth - anchorX;
+        float offsetY = boxY + halfHeight - anchorY;
+        centerX = x + anchorX + offsetX * cos - offsetY * sin;
+        centerY = y + anchorY + offsetX * sin + offsetY * cos;
+        extentX = halfWidth * Math.abs(cos) + halfHeight * Math.abs(sin);
+        extentY = halfWidth * Math.abs(sin) + halfHeight * Math.abs(cos);
 
-    public Bounds(final Rectangle rect, final ArrayList<Line2D.Float> polygon, boolean wrapsX, boolean wrapsY){
-        this.boundRect = rect;
-        this.boundPolygon = polygon;
-        this.wrapsX = wrapsX;
-        this.wrapsY = wrapsY;
+        // add a copy on the other side of the map for each side the box hangs over or is near
+        float shiftX = 0;
+        float shiftY = 0;
+        if (centerX + extentX + WRAP_MARGIN >= Map.WIDTH){
+            shiftX = -Map.WIDTH;
+        }
+        else if (centerX - extentX - WRAP_MARGIN < 0){
+            shiftX = Map.WIDTH;
+        }
+        if (centerY + extentY + WRAP_MARGIN >= Map.HEIGHT){
+            shiftY = -Map.HEIGHT;
+        }
+        else if (centerY - extentY - WRAP_MARGIN < 0){
+            shiftY = Map.HEIGHT;
+        }
+        numCopies = 0;
+        addCopy(centerX, centerY);
+        if (shiftX != 0){
+            addCopy(centerX + shiftX, centerY);
+        }
+        if (shiftY != 0){
+            addCopy(centerX, centerY + shiftY);
+        }
+        if (shiftX != 0 && shiftY != 0){
+            addCopy(centerX + shiftX, centerY + shiftY);
+        }
     }
 
-    public ArrayList<Line2D.Float> getPolygon(){return boundPolygon;}
-    public Rectangle getRect(){return boundRect;}
-    public boolean doesWrapX(){return wrapsX;}
-    public boolean doesWrapY(){return wrapsY;}
-
-    public void setRect(final Rectangle r){
-        boundRect.x = r.x;
-        boundRect.y = r.y;
-        boundRect.width = r.width;
-        boundRect.height = r.height;
+    private void addCopy(final float x, final float y){
+        copyX[numCopies] = x;
+        copyY[numCopies] = y;
+        numCopies++;
     }
 
     /**
-     * Checks is the bounds are overlapping
-     * @param other the other bounds to check for overlapping
-     * @return whether or not the other bounds overlap
+     * Finds when a square moving in a straight line first overlaps the box or one of its wrapped copies. The
+     * axes of the map are checked first, and only if the square overlaps on both are the axes of the rotated box
+     * checked, which together are the separating axis test for the two boxes
+     * @param x x coordinate of the top left of the square at the start of the move
+     * @param y y coordinate of the top left of the square at the start of the move
+     * @param dx how far the square moves in the x direction
+     * @param dy how far the square moves in the y direction
+     * @param size the width and height of the square
+     * @return the fraction of the move, from 0 to 1, when they first overlap, RectBounds.NO_HIT if they never overlap
      */
-    public boolean intersects(final Bounds other) {
-        // find all of the rectangles and all of the bounds
-        ArrayList<Rectangle> theseRects = getAllRects(this);
-        ArrayList<ArrayList<Line2D.Float>> thesePolys = getAllPolygons(this);
-
-        ArrayList<Rectangle> otherRects = getAllRects(other);
-        ArrayList<ArrayList<Line2D.Float>> otherPolys = getAllPolygons(other);
-
-        // go through each rectangle and each polygon, checking the polygon only if the rectangle intersects
-        int numTheseBounds = theseRects.size();
-        int numOtherBounds = otherRects.size();
-
-        for (int thisBound = 0; thisBound < numTheseBounds; thisBound++) {
-            for (int otherBound = 0; otherBound < numOtherBounds; otherBound++) {
-                // if the rectangles intersect, then check if polygons intersect
-                if (theseRects.get(thisBound).intersects(otherRects.get(otherBound))) {
-                    // check polygons by seeing if any line intersects
-                    for (Line2D.Float thisLine : thesePolys.get(thisBound)) {
-                        for (Line2D.Float otherLine : otherPolys.get(otherBound)) {
-                            if (thisLine.intersectsLine(otherLine)) {
-                                return true;
-                            }
-                        }
+    public float sweep(final float x, final float y, final float dx, final float dy, final int size){
+        float half = size / 2f;
+        float squareX = x + half;
+        float squareY = y + half;
+        // the square does not turn with the box, so its half length on the axes of the box depends on the angle
+        float squareReach = half * (Math.abs(cos) + Math.abs(sin));
+        float squareU = squareX * cos + squareY * sin;
+        float squareV = -squareX * sin + squareY * cos;
+        float moveU = dx * cos + dy * sin;
+        float moveV = -dx * sin + dy * cos;
+        float first = RectBounds.NO_HIT;
+        for (int i = 0; i < numCopies; i++){
+            float enter = 0;
+            float exit = 1;
+            // find when the square and box overlap on each axis, they only overlap when they overlap on all axes
+            for (int axis = 0; axis < 4 && enter < exit; axis++){
+                float gap;
+                float speed;
+                float reach;
+                if (axis == 0){
+                    gap = copyX[i] - squareX;
+                    speed = dx;
+                    reach = extentX + half;
+                }
+                else if (axis == 1){
+                    gap = copyY[i] - squareY;
+                    speed = dy;
+                    reach = extentY + half;
+                }
+                else if (axis == 2){
+                    gap = copyX[i] * cos + copyY[i] * sin - squareU;
+                    speed = moveU;
+                    reach = halfWidth + squareReach;
+                }
+                else {
+                    gap = -copyX[i] * sin + copyY[i] * cos - squareV;
+                    speed = moveV;
+                    reach = halfHeight + squareReach;
+                }
+                if (speed == 0){
+                    if (Math.abs(gap) >= reach){
+                        exit = enter;
                     }
                 }
-            }
-        }
-        return false;
-    }
-
-    /**
-     * checks if the rectangle of this bound intersects with the rectangle of the other bound
-     * @param other the bound to check for rectangle intersection against
-     * @return whether or not the rectangles of the bounds intersect
-     */
-    public boolean rectIntersect(final Bounds other){
-        // find all of the rectangles
-        ArrayList<Rectangle> theseRects = getAllRects(this);
-        ArrayList<Rectangle> otherRects = getAllRects(other);
-        for (Rectangle thisRect : theseRects){
-            for (Rectangle otherRect : otherRects){
-                if (thisRect.intersects(otherRect)) {
-                    return true;
+                else {
+                    float t1 = (gap - reach) / speed;
+                    float t2 = (gap + reach) / speed;
+                    enter = Math.max(enter, Math.min(t1, t2));
+                    exit = Math.min(exit, Math.max(t1, t2));
                 }
             }
+            if (enter < exit && enter < first){
+                first = enter;
+            }
         }
-        return false;
+        return first;
     }
 }
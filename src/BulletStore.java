@@ -0,0 +1,282 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Holds every bullet in the map in parallel primitive arrays so that moving, checking, and removing bullets never
+ * allocates. Bullets are referred to by their index, which only changes when compact() removes killed bullets.
+ * New bullets wait after the current bullets until addSpawned() is called, so spawning never disturbs an update
+ */
+public class BulletStore {
+
+    public static final int WIDTH = 5;
+    public static final int CAPACITY = 32768;  // most bullets that can be in the map at once
+    private static final Color COLOR = Color.BLACK;
+    private static final float SPEED = 15;
+    private static final int DAMAGE = 5;
+    // the sprite used to draw every bullet
+    private static final BufferedImage IMAGE = createImage();
+
+    // what a bullet runs into during an update
+    public static final int HIT_NOTHING = 0;
+    public static final int HIT_ELEMENT = 1;
+    public static final int HIT_PLAYER = 2;
+    public static final int HIT_BULLET = 3;
+
+    // smallest size of the cells used to find nearby bullets, must be larger than two moves plus a bullet width
+    private static final int CELL_SIZE = 64;
+    private static final int NO_BULLET = -1;
+
+    private int count = 0;
+    private int spawned = 0;  // number of new bullets waiting after the current bullets
+    private final float[] x = new float[CAPACITY];
+    private final float[] y = new float[CAPACITY];
+    private final float[] dx = new float[CAPACITY];  // amount to move each update in the x direction
+    private final float[] dy = new float[CAPACITY];  // amount to move each update in the y direction
+    private final int[] damage = new int[CAPACITY];
+    private final int[] owner = new int[CAPACITY];  // index of the player that shot the bullet
+    private final boolean[] dead = new boolean[CAPACITY];  // killed this update, removed by compact()
+
+    // what each bullet runs into during the current update, found before any bullet moves
+    private final int[] hitType = new int[CAPACITY];
+    private final int[] hitIndex = new int[CAPACITY];
+    private final float[] hitTime = new float[CAPACITY];
+
+    // grid of the bullets in each cell, each cell holds the first bullet and each bullet holds the next in its cell
+    private int gridColumns;
+    private int gridRows;
+    private int[] cellFirst = new int[0];
+    private final int[] cellNext = new int[CAPACITY];
+
+    /**
+     * Creates the image used to draw every bullet
+     * @return a small filled circle
+     */
+    private static BufferedImage createImage(){
+        BufferedImage image = Surfaces.createImage(WIDTH, WIDTH, true);
+        Graphics g = image.getGraphics();
+        g.setColor(COLOR);
+        g.fillOval(0,0,WIDTH,WIDTH);
+        g.dispose();
+        return image;
+    }
+
+    public static BufferedImage getImage(){return IMAGE;}
+
+    /**
+     * Adds a bullet to the map. The bullet waits until addSpawned() is called before it is part of the map
+     * @param loc the top left of the new bullet
+     * @param angle the angle, in radians, the bullet travels at
+     * @param shooter the index of the player shooting the bullet
+     * @return the index the bullet has until the store is next compacted, -1 if the store is full
+     */
+    public int spawn(final Point loc, final double angle, final int shooter){
+        int index = count + spawned;
+        if (index == CAPACITY){
+            return -1;
+        }
+        x[index] = loc.x;
+        y[index] = loc.y;
+        dx[index] = (int) (Math.cos(angle) * SPEED);
+        dy[index] = (int) (Math.sin(angle) * SPEED);
+        damage[index] = DAMAGE;
+        owner[index] = shooter;
+        dead[index] = false;
+        hitType[index] = HIT_NOTHING;
+        spawned++;
+        return index;
+    }
+
+    /**
+     * Removes the most recently spawned bullet before it is added, used when it hits something before joining the map
+     */
+    public void cancelSpawn(){
+        spawned--;
+    }
+
+    /**
+     * Makes the bullets spawned since the last call part of the map
+     */
+    public void addSpawned(){
+        count += spawned;
+        spawned = 0;
+    }
+
+    /**
+     * Marks the bullet to be removed the next time compact() is called. The bullet keeps its index until then
+     * @param index the index of the bullet to kill
+     */
+    public void kill(final int index){
+        dead[index] = true;
+    }
+
+    public boolean isDead(final int index){return dead[index];}
+
+    /**
+     * Removes all of the killed bullets in one pass, keeping the remaining bullets, and then the bullets waiting
+     * to be added, in the same order
+     */
+    public void compact(){
+        int kept = 0;
+        for (int i = 0; i < count; i++){
+            if (!dead[i]){
+                if (kept != i){
+                    copy(i, kept);
+                }
+                kept++;
+            }
+        }
+        // move the waiting bullets down to follow the remaining bullets
+        if (kept != count){
+            for (int i = 0; i < spawned; i++){
+                copy(count + i, kept + i);
+            }
+        }
+        count = kept;
+    }
+
+    /**
+     * Copies every value of a bullet to another index
+     * @param from the index of the bullet to copy
+     * @param to the index to copy the bullet to
+     */
+    private void copy(final int from, final int to){
+        x[to] = x[from];
+        y[to] = y[from];
+        dx[to] = dx[from];
+        dy[to] = dy[from];
+        damage[to] = damage[from];
+        owner[to] = owner[from];
+        dead[to] = dead[from];
+        hitType[to] = hitType[from];
+        hitIndex[to] = hitIndex[from];
+        hitTime[to] = hitTime[from];
+    }
+
+    /**
+     * Translates the bullet based on its speed and angle, wrapping around the map
+     * @param index the index of the bullet to move
+     */
+    public void move(final int index){
+        float newX = x[index] + dx[index];
+        float newY = y[index] + dy[index];
+        if (newX < 0){
+            newX += Map.WIDTH;
+        }
+        else if (newX > Map.WIDTH){
+            newX -= Map.WIDTH;
+        }
+        if (newY < 0){
+            newY += Map.HEIGHT;
+        }
+        else if (newY > Map.HEIGHT){
+            newY -= Map.HEIGHT;
+        }
+        x[index] = newX;
+        y[index] = newY;
+    }
+
+    /**
+     * Sets what the bullet runs into during the current update
+     * @param index the index of the bullet
+     * @param type one of the HIT constants
+     * @param hit the index of the element, player, or bullet that is hit
+     * @param time when the hit happens, as a fraction of the bullet's move
+     */
+    public void setHit(final int index, final int type, final int hit, final float time){
+        hitType[index] = type;
+        hitIndex[index] = hit;
+        hitTime[index] = time;
+    }
+
+    /**
+     * Places each bullet into the grid cell of its top left, used to only check nearby bullets against each other
+     */
+    public void buildGrid(){
+        // the cells evenly divide the map so the cells on opposite sides are neighbors when wrapping
+        int columns = Math.max(Map.WIDTH / CELL_SIZE, 1);
+        int rows = Math.max(Map.HEIGHT / CELL_SIZE, 1);
+        if (columns != gridColumns || rows != gridRows){
+            gridColumns = columns;
+            gridRows = rows;
+            cellFirst = new int[columns * rows];
+        }
+        Arrays.fill(cellFirst, NO_BULLET);
+        for (int i = 0; i < count; i++){
+            int cell = getCell(x[i], y[i]);
+            cellNext[i] = cellFirst[cell];
+            cellFirst[cell] = i;
+        }
+    }
+
+    /**
+     * The grid cell holding the given location
+     */
+    private int getCell(final float locX, final float locY){
+        int column = Math.min(Math.max((int) (locX * gridColumns / Map.WIDTH), 0), gridColumns - 1);
+        int row = Math.min(Math.max((int) (locY * gridRows / Map.HEIGHT), 0), gridRows - 1);
+        return row * gridColumns + column;
+    }
+
+    /**
+     * Finds the first other bullet the given bullet runs into during its next move, checking only bullets in the
+     * grid cells around it. If a bullet is hit sooner than the hit already set by setHit, it replaces that hit.
+     * buildGrid() must have been called since any bullet was added, removed, or moved
+     * @param index the index of the bullet to check
+     * @return the index of the first bullet hit, NO_BULLET if no bullet is hit before the current hit
+     */
+    public int sweepBullets(final int index){
+        int first = NO_BULLET;
+        float firstTime = hitType[index] == HIT_NOTHING ? RectBounds.NO_HIT : hitTime[index];
+        int cellIndex = getCell(x[index], y[index]);
+        int column = cellIndex % gridColumns;
+        int row = cellIndex / gridColumns;
+        for (int r = row - 1; r <= row + 1; r++){
+            for (int c = column - 1; c <= column + 1; c++){
+                // wrap the neighboring cells around the map
+                int cell = ((r + gridRows) % gridRows) * gridColumns + ((c + gridColumns) % gridColumns);
+                for (int other = cellFirst[cell]; other != NO_BULLET; other = cellNext[other]){
+                    if (other == index){
+                        continue;
+                    }
+                    // the other bullet moves too, so check the movement relative to it
+                    float t = RectBounds.sweepRect(x[index], y[index], dx[index] - dx[other], dy[index] - dy[other],
+                            WIDTH, (int) x[other], (int) y[other], WIDTH, WIDTH);
+                    if (t < firstTime || (t == firstTime && first != NO_BULLET && other < first)){
+                        firstTime = t;
+                        first = other;
+                    }
+                }
+            }
+        }
+        if (first != NO_BULLET){
+            setHit(index, HIT_BULLET, first, firstTime);
+        }
+        return first;
+    }
+
+    /**
+     * If a bullet placed at the given location would overlap any existing or waiting bullet
+     * @param loc the top left of the bullet to check
+     * @return whether or not the location overlaps a bullet
+     */
+    public boolean overlaps(final Point loc){
+        for (int i = 0; i < count + spawned; i++){
+            if (RectBounds.rectsIntersect(loc.x, loc.y, WIDTH, WIDTH, (int) x[i], (int) y[i], WIDTH, WIDTH)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getCount(){return count;}
+    public float getX(final int index){return x[index];}
+    public float getY(final int index){return y[index];}
+    public float getDx(final int index){return dx[index];}
+    public float getDy(final int index){return dy[index];}
+    public int getDamage(final int index){return damage[index];}
+    public int getOwner(final int index){return owner[index];}
+    public int getHitType(final int index){return hitType[index];}
+    public int getHitIndex(final int index){return hitIndex[index];}
+    public float getHitTime(final int index){return hitTime[index];}
+}
@@ -0,0 +1,101 @@
+/**
+ * The areas of the map that have changed since they were last drawn. Areas hanging over the sides of the map are
+ * split into pieces inside the map, and areas that overlap or touch are merged, so each part of the map is drawn at
+ * most once no matter how many times it changes
+ */
+public class DirtyRegions {
+
+    // packed x, y, width, height of each region
+    private static final int RECT_SIZE = 4;
+    // past this many regions, merging gets slow and drawing the whole map once is cheaper
+    private static final int MAX_REGIONS = 128;
+
+    private final int[] regions = new int[MAX_REGIONS * RECT_SIZE];
+    private int count = 0;
+
+    /**
+     * Marks an area of the map as changed
+     * @param x x coordinate of the area, may be outside the map
+     * @param y y coordinate of the area, may be outside the map
+     * @param width width of the area
+     * @param height height of the area
+     */
+    public void add(final int x, final int y, final int width, final int height){
+        if (width <= 0 || height <= 0){
+            return;
+        }
+        int startX = Math.floorMod(x, Map.WIDTH);
+        int startY = Math.floorMod(y, Map.HEIGHT);
+        int spanX = Math.min(width, Map.WIDTH);
+        int spanY = Math.min(height, Map.HEIGHT);
+        // the part of the area before the right and bottom sides, and the part wrapped around to the other side
+        int insideX = Math.min(spanX, Map.WIDTH - startX);
+        int insideY = Math.min(spanY, Map.HEIGHT - startY);
+        addPiece(startX, startY, insideX, insideY);
+        if (insideX < spanX){
+            addPiece(0, startY, spanX - insideX, insideY);
+        }
+        if (insideY < spanY){
+            addPiece(startX, 0, insideX, spanY - insideY);
+        }
+        if (insideX < spanX && insideY < spanY){
+            addPiece(0, 0, spanX - insideX, spanY - insideY);
+        }
+    }
+
+    /**
+     * Adds an area inside the map, merging it with every region it overlaps or touches
+     */
+    private void addPiece(int x, int y, int width, int height){
+        int i = 0;
+        while (i < count){
+            int index = i * RECT_SIZE;
+            int otherX = regions[index];
+            int otherY = regions[index + 1];
+            int otherWidth = regions[index + 2];
+            int otherHeight = regions[index + 3];
+            if (x <= otherX + otherWidth && otherX <= x + width && y <= otherY + otherHeight && otherY <= y + height){
+                // grow the piece to cover the region, remove the region, and check the regions again
+                int right = Math.max(x + width, otherX + otherWidth);
+                int bottom = Math.max(y + height, otherY + otherHeight);
+                x = Math.min(x, otherX);
+                y = Math.min(y, otherY);
+                width = right - x;
+                height = bottom - y;
+                count--;
+                System.arraycopy(regions, count * RECT_SIZE, regions, index, RECT_SIZE);
+                i = 0;
+            }
+            else {
+                i++;
+            }
+        }
+        if (count == MAX_REGIONS){
+            // replace every region with the whole map, which every later piece merges into
+            x = 0;
+            y = 0;
+            width = Map.WIDTH;
+            height = Map.HEIGHT;
+            count = 0;
+        }
+        int index = count * RECT_SIZE;
+        regions[index] = x;
+        regions[index + 1] = y;
+        regions[index + 2] = width;
+        regions[index + 3] = height;
+        count++;
+    }
+
+    /**
+     * Forgets every region, used after they are drawn
+     */
+    public void clear(){
+        count = 0;
+    }
+
+    public int getCount(){return count;}
+    public int getX(final int index){return regions[index * RECT_SIZE];}
+    public int getY(final int index){return regions[index * RECT_SIZE + 1];}
+    public int getWidth(final int index){return regions[index * RECT_SIZE + 2];}
+    public int getHeight(final int index){return regions[index * RECT_SIZE + 3];}
+}
@@ -0,0 +1,283 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Holds every map element other than the players and bullets as entities, each an index into parallel component
+ * arrays. An entity has a mask of the components it uses, and each system only walks the arrays it needs. Like
+ * bullets, new entities wait until addSpawned() is called and killed entities are removed by compact(), which is the
+ * only time the index of an entity changes
+ */
+public class EntityStore {
+
+    // room for entities other than walls, such as ones spawned during a game, on top of the walls of the layout
+    public static final int EXTRA_CAPACITY = 4096;
+
+    // the components an entity can have, combined into its mask
+    public static final int POSITION = 1;
+    public static final int VELOCITY = 1 << 1;
+    public static final int BOUNDS = 1 << 2;
+    public static final int HEALTH = 1 << 3;
+    public static final int SPRITE = 1 << 4;
+    // the components of each kind of entity
+    public static final int WALL = POSITION | BOUNDS | SPRITE;
+
+    private static final Color WALL_COLOR = Color.GRAY;
+    public static final int NO_SPRITE = -1;
+
+    private final int capacity;  // most entities that can be in the map at once
+    private int count = 0;
+    private int spawned = 0;  // number of new entities waiting after the current entities
+    private final int[] mask;
+    private final boolean[] dead;
+    // position, the top left of the entity
+    private final float[] x;
+    private final float[] y;
+    // velocity, the amount to move each update
+    private final float[] dx;
+    private final float[] dy;
+    // bounds, the size of the box used for collisions, starting at the position
+    private final int[] width;
+    private final int[] height;
+    private final int[] health;
+    private final int[] sprite;  // index into the sprites, shared between entities
+
+    private final ArrayList<BufferedImage> sprites = new ArrayList<>();
+    // the sprite of each size of wall, keyed by the width and height packed into one number
+    private final HashMap<Long, Integer> wallSprites = new HashMap<>();
+    private int version = 0;  // changes whenever an entity is added, removed, or moved
+
+    /**
+     * @param capacity most entities that can be in the map at once
+     */
+    public EntityStore(final int capacity){
+        this.capacity = capacity;
+        mask = new int[capacity];
+        dead = new boolean[capacity];
+        x = new float[capacity];
+        y = new float[capacity];
+        dx = new float[capacity];
+        dy = new float[capacity];
+        width = new int[capacity];
+        height = new int[capacity];
+        health = new int[capacity];
+        sprite = new int[capacity];
+    }
+
+    /**
+     * Adds an entity with the given components, every component starts at zero. The entity waits until
+     * addSpawned() is called before it is part of the map
+     * @param components the mask of components the entity uses
+     * @return the index of the new entity, -1 if the store is full
+     */
+    public int spawn(final int components){
+        int index = count + spawned;
+        if (index == capacity){
+            return -1;
+        }
+        mask[index] = components;
+        dead[index] = false;
+        x[index] = 0;
+        y[index] = 0;
+        dx[index] = 0;
+        dy[index] = 0;
+        width[index] = 0;
+        height[index] = 0;
+        health[index] = 0;
+        sprite[index] = NO_SPRITE;
+        spawned++;
+        return index;
+    }
+
+    /**
+     * Adds a wall filling the given rectangle. Walls of the same size share a sprite
+     * @param extent the area the wall covers
+     * @return the index of the new wall, -1 if the store is full
+     */
+    public int spawnWall(final Rectangle extent){
+        int index = spawn(WALL);
+        if (index == -1){
+            return -1;
+        }
+        x[index] = extent.x;
+        y[index] = extent.y;
+        width[index] = extent.width;
+        height[index] = extent.height;
+        sprite[index] = findWallSprite(extent.width, extent.height);
+        return index;
+    }
+
+    /**
+     * Finds the sprite for a wall of the given size, creating it if no wall of that size has one yet
+     * @return the index of the sprite
+     */
+    private int findWallSprite(final int spriteWidth, final int spriteHeight){
+        long key = ((long) spriteWidth << 32) | (spriteHeight & 0xFFFFFFFFL);
+        Integer found = wallSprites.get(key);
+        if (found != null){
+            return found;
+        }
+        BufferedImage image = Surfaces.createImage(spriteWidth, spriteHeight, false);
+        Graphics g = image.getGraphics();
+        g.setColor(WALL_COLOR);
+        g.fillRect(0, 0, spriteWidth, spriteHeight);
+        g.dispose();
+        int index = addSprite(image);
+        wallSprites.put(key, index);
+        return index;
+    }
+
+    /**
+     * Adds an image that entities can be drawn with
+     * @param image the image to add
+     * @return the sprite index to give to entities
+     */
+    public int addSprite(final BufferedImage image){
+        sprites.add(image);
+        return sprites.size() - 1;
+    }
+
+    /**
+     * Makes the entities spawned since the last call part of the map
+     */
+    public void addSpawned(){
+        if (spawned > 0){
+            version++;
+        }
+        count += spawned;
+        spawned = 0;
+    }
+
+    /**
+     * Marks the entity to be removed the next time compact() is called. The entity keeps its index until then
+     * @param index the index of the entity to kill
+     */
+    public void kill(final int index){
+        dead[index] = true;
+    }
+
+    /**
+     * Removes all of the killed entities in one pass, keeping the remaining entities, and then the entities waiting
+     * to be added, in the same order
+     */
+    public void compact(){
+        int kept = 0;
+        for (int i = 0; i < count; i++){
+            if (!dead[i]){
+                if (kept != i){
+                    copy(i, kept);
+                }
+                kept++;
+            }
+        }
+        if (kept != count){
+            for (int i = 0; i < spawned; i++){
+                copy(count + i, kept + i);
+            }
+            version++;
+        }
+        count = kept;
+    }
+
+    private void copy(final int from, final int to){
+        mask[to] = mask[from];
+        dead[to] = dead[from];
+        x[to] = x[from];
+        y[to] = y[from];
+        dx[to] = dx[from];
+        dy[to] = dy[from];
+        width[to] = width[from];
+        height[to] = height[from];
+        health[to] = health[from];
+        sprite[to] = sprite[from];
+    }
+
+    /**
+     * Moves every entity with a position and velocity, wrapping around the map
+     */
+    public void move(){
+        for (int i = 0; i < count; i++){
+            if ((mask[i] & (POSITION | VELOCITY)) == (POSITION | VELOCITY) && !dead[i]){
+                move(i);
+            }
+        }
+    }
+
+    /**
+     * Moves the entity by its velocity, wrapping around the map
+     * @param index the index of the entity to move
+     */
+    public void move(final int index){
+        version++;
+        x[index] = wrap(x[index] + dx[index], Map.WIDTH);
+        y[index] = wrap(y[index] + dy[index], Map.HEIGHT);
+    }
+
+    private static float wrap(final float value, final int size){
+        float wrapped = value % size;
+        return wrapped < 0 ? wrapped + size : wrapped;
+    }
+
+    /**
+     * Removes health from an entity, killing it if it runs out. Entities without health are not affected
+     * @param index the index of the entity
+     * @param damage the amount of health to remove
+     */
+    public void damage(final int index, final int damage){
+        if ((mask[index] & HEALTH) != 0){
+            health[index] -= damage;
+            if (health[index] <= 0){
+                kill(index);
+            }
+        }
+    }
+
+    /**
+     * If the box of any entity with bounds intersects the given rectangle
+     * @return the index of the first entity intersecting the rectangle, -1 if there is none
+     */
+    public int intersects(final int rx, final int ry, final int rw, final int rh){
+        for (int i = 0; i < count; i++){
+            if ((mask[i] & BOUNDS) != 0 && !dead[i]
+                    && RectBounds.rectsIntersect((int) x[i], (int) y[i], width[i], height[i], rx, ry, rw, rh)){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * If any entity with bounds intersects the bounds of an element
+     * @param rb the bounds of the element to check
+     * @return the index of the first entity intersecting the element, -1 if there is none
+     */
+    public int intersects(final RectBounds rb){
+        for (int r = 0; r < rb.getNumBoundingRects(); r++){
+            int hit = intersects(rb.getBoundX(r), rb.getBoundY(r), rb.getBoundWidth(r), rb.getBoundHeight(r));
+            if (hit != -1){
+                return hit;
+            }
+        }
+        return -1;
+    }
+
+    public int getCount(){return count;}
+    public int getCapacity(){return capacity;}
+    public int getVersion(){return version;}
+    public int getMask(final int index){return mask[index];}
+    public boolean has(final int index, final int components){return (mask[index] & components) == components;}
+    public boolean isDead(final int index){return dead[index];}
+    public float getX(final int index){return x[index];}
+    public float getY(final int index){return y[index];}
+    public int getWidth(final int index){return width[index];}
+    public int getHeight(final int index){return height[index];}
+    public int getHealth(final int index){return health[index];}
+    public int getSprite(final int index){return sprite[index];}
+    public BufferedImage getSpriteImage(final int index){return sprites.get(sprite[index]);}
+    public void setPosition(final int index, final float newX, final float newY){x[index] = newX; y[index] = newY; version++;}
+    public void setVelocity(final int index, final float newDx, final float newDy){dx[index] = newDx; dy[index] = newDy;}
+    public void setSize(final int index, final int newWidth, final int newHeight){width[index] = newWidth; height[index] = newHeight; version++;}
+    public void setHealth(final int index, final int newHealth){health[index] = newHealth;}
+    public void setSprite(final int index, final int newSprite){sprite[index] = newSprite; version++;}
+}
@@ -0,0 +1,177 @@
+/**
+ * The distance from every cell of the layout grid to one target cell, walking between open cells and wrapping around
+ * the map. Anything chasing the target only needs to look at the cells next to it to find which way to go.
+ * The distances are found with a breadth first search that can be spread over several updates, the last finished
+ * distances are kept for lookups until the new search is done. A search is never cleared all at once: each cell is
+ * stamped with the search that reached it, and a cell stamped by an older search counts as not reached
+ */
+public class FlowField {
+
+    // directions to step in, returned by getDirection
+    public static final int NONE = -1;
+    public static final int UP = 0;
+    public static final int RIGHT = 1;
+    public static final int DOWN = 2;
+    public static final int LEFT = 3;
+    private static final int[] STEP_COLUMN = {0, 1, 0, -1};
+    private static final int[] STEP_ROW = {-1, 0, 1, 0};
+
+    // distance of a cell that can not reach the target
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final Layout layout;
+    private final int columns;
+    private final int rows;
+    // the finished distances used for lookups, and the distances the search is filling in, each with the number of
+    // the search that set the distance of each cell
+    private int[] distance;
+    private int[] distanceStamp;
+    private int[] searching;
+    private int[] searchingStamp;
+    private int distanceSearch = -1;  // the number of the search the finished distances came from, -1 if none
+    private int searchCount = 0;  // the number of the running or last search
+    // cells waiting to be visited by the search, in the order they were reached
+    private final int[] queue;
+    private int queueStart = 0;
+    private int queueEnd = 0;
+    private int targetCell = -1;  // the target of the finished distances
+    private int searchCell = -1;  // the target of the search, -1 if no search is running
+    private int nextCell = -1;  // where the target moved while the search was running, searched next, -1 if it did not
+
+    /**
+     * @param layout the layout holding the grid of wall cells
+     */
+    public FlowField(final Layout layout){
+        this.layout = layout;
+        this.columns = layout.getColumns();
+        this.rows = layout.getRows();
+        distance = new int[columns * rows];
+        distanceStamp = new int[columns * rows];
+        searching = new int[columns * rows];
+        searchingStamp = new int[columns * rows];
+        queue = new int[columns * rows];
+    }
+
+    /**
+     * Starts a new search if the target is in a different cell than the last search. Nothing is done if the target
+     * has not changed cells. If a search is running it is finished first, and the target is searched for after it,
+     * so a target that keeps moving still gets a finished field
+     * @param column the column of the target cell, may be outside the grid
+     * @param row the row of the target cell, may be outside the grid
+     */
+    public void setTarget(final int column, final int row){
+        int cell = Math.floorMod(row, rows) * columns + Math.floorMod(column, columns);
+        if (searchCell != -1){
+            nextCell = cell == searchCell ? -1 : cell;
+        }
+        else if (cell != targetCell){
+            startSearch(cell);
+        }
+    }
+
+    /**
+     * Starts a search from the target cell. Cells reached by earlier searches have older stamps, so nothing needs
+     * to be cleared
+     * @param cell the target cell
+     */
+    private void startSearch(final int cell){
+        searchCount++;
+        searchCell = cell;
+        searching[cell] = 0;
+        searchingStamp[cell] = searchCount;
+        queue[0] = cell;
+        queueStart = 0;
+        queueEnd = 1;
+    }
+
+    /**
+     * Continues the search, visiting at most the given number of cells. When the search finishes its distances
+     * replace the distances used for lookups
+     * @param budget the most cells to visit
+     * @return the number of cells visited
+     */
+    public int step(final int budget){
+        if (searchCell == -1){
+            return 0;
+        }
+        int visited = 0;
+        while (queueStart < queueEnd && visited < budget){
+            int cell = queue[queueStart++];
+            int column = cell % columns;
+            int row = cell / columns;
+            for (int d = 0; d < STEP_COLUMN.length; d++){
+                int nextColumn = Math.floorMod(column + STEP_COLUMN[d], columns);
+                int nextRow = Math.floorMod(row + STEP_ROW[d], rows);
+                int next = nextRow * columns + nextColumn;
+                if (searchingStamp[next] != searchCount && !layout.isWall(nextColumn, nextRow)){
+                    searching[next] = searching[cell] + 1;
+                    searchingStamp[next] = searchCount;
+                    queue[queueEnd++] = next;
+                }
+            }
+            visited++;
+        }
+        // the search is done, swap it in for lookups
+        if (queueStart == queueEnd){
+            int[] finished = searching;
+            searching = distance;
+            distance = finished;
+            int[] finishedStamp = searchingStamp;
+            searchingStamp = distanceStamp;
+            distanceStamp = finishedStamp;
+            distanceSearch = searchCount;
+            targetCell = searchCell;
+            searchCell = -1;
+            // the target moved while searching, so search again from where it is now
+            if (nextCell != -1 && nextCell != targetCell){
+                startSearch(nextCell);
+            }
+            nextCell = -1;
+        }
+        return visited;
+    }
+
+    /**
+     * The direction to step from a cell to get closer to the target, using the last finished search
+     * @param column the column of the cell, may be outside the grid
+     * @param row the row of the cell, may be outside the grid
+     * @return one of UP, RIGHT, DOWN, or LEFT, NONE if the cell is the target or can not reach it
+     */
+    public int getDirection(final int column, final int row){
+        int wrappedColumn = Math.floorMod(column, columns);
+        int wrappedRow = Math.floorMod(row, rows);
+        int best = getCellDistance(wrappedRow * columns + wrappedColumn);
+        int direction = NONE;
+        for (int d = 0; d < STEP_COLUMN.length; d++){
+            int next = getCellDistance(Math.floorMod(wrappedRow + STEP_ROW[d], rows) * columns
+                    + Math.floorMod(wrappedColumn + STEP_COLUMN[d], columns));
+            if (next < best){
+                best = next;
+                direction = d;
+            }
+        }
+        return direction;
+    }
+
+    /**
+     * The number of steps from a cell to the target, using the last finished search
+     * @param column the column of the cell, may be outside the grid
+     * @param row the row of the cell, may be outside the grid
+     * @return the number of steps, UNREACHABLE if the cell can not reach the target
+     */
+    public int getDistance(final int column, final int row){
+        return getCellDistance(Math.floorMod(row, rows) * columns + Math.floorMod(column, columns));
+    }
+
+    /**
+     * The finished distance of a cell, cells the finished search did not reach are unreachable
+     */
+    private int getCellDistance(final int cell){
+        return distanceStamp[cell] == distanceSearch ? distance[cell] : UNREACHABLE;
+    }
+
+    public boolean isSearching(){return searchCell != -1;}
+    public boolean hasTarget(){return targetCell != -1;}
+    public static int getStepColumn(final int direction){return STEP_COLUMN[direction];}
+    public static int getStepRow(final int direction){return STEP_ROW[direction];}
+}
@@ -43,12 +43,12 @@ public class GameClient {
      */
     public boolean joinServer(final String ipAddress, final int portNumber){
         try{
-            System.out.println("Making a socket...");
+            Log.info("Making a socket...");
             socket = new Socket(ipAddress, portNumber);
             InputStreamReader isReader = new InputStreamReader(socket.getInputStream());
             serverReader = new BufferedReader(isReader);
             serverWriter = new PrintWriter(socket.getOutputStream());
-            System.out.println("Connected to Server");
+            Log.info("Connected to Server");
             // start listening to messages from the server
             Thread readerThread = new Thread(new ServerListener());
             readerThread.start();
@@ -92,7 +92,7 @@ public class GameClient {
                     player.onServerMessage(message);
                 }
             } catch (Exception e) {
-                System.out.println("Problem reading message");
+                Log.warn("Problem reading message");
                 e.printStackTrace();
                 try {
                     socket.close();
@@ -11,21 +11,23 @@ import java.util.ArrayList;
  */
 public class GameServer{
 
-    // milliseconds to wait between requesting that players send input
-    private static final int PLAYER_INPUT_WAIT_TIME = 50;
+    // milliseconds between updates, each update uses the latest input every player has sent
+    private static final int UPDATE_TIME = 50;
 
     private int portNumber;
     private GameInterface game;
     private ArrayList<ClientHandler> clients = new ArrayList<>();
     private ServerSocket serverSocket;
     private boolean active = false;
+    // set once any client sends a player update, which they only do once the game has started
+    private volatile boolean updatesStarted = false;
 
     public static final String CONNECTION_REJECTED = "REJECTED";
     // special message used during games, meaning do not send this message immediately but wait for server
     public static final String PLAYER_UPDATE = "PLAYER_UPDATE";
     public static final String UPDATE_DELIMITER = "!";  // delimiter to separate actions in a player update
     public static final String DELIMITER = ":";  // delimiter to separate the different parts of a player update
-    // all of the updates have been received, so players can send their input again
+    // the server has applied the latest input and updated the game, sent once every update
     public static final String END_PLAYER_UPDATE = "END_PLAYER_UPDATE";
 
     /**
@@ -45,7 +47,7 @@ public class GameServer{
         try{
             // begin to listen for connections at this port
             serverSocket = new ServerSocket(portNumber);
-            System.out.println("Starting the server listening...");
+            Log.info("Starting the server listening...");
             active = true;
         }
         catch (Exception e){
@@ -67,7 +69,7 @@ public class GameServer{
                             // add a new listener to handle this client
                             Thread t = new Thread(client);
                             t.start();
-                            System.out.println("A new client connected");
+                            Log.info("A new client connected");
                         }
                         else{
                             ClientHandler client = new ClientHandler(clientSocket);
@@ -84,32 +86,34 @@ public class GameServer{
         // thread to periodically get the updates of the players
         (new Thread() {
             public void run() {
-                // wait until there is at least one player before checking for updates
-                while (clients.size() == 0){
+                // wait until the game has started before updating
+                while (!updatesStarted){
                     try{Thread.sleep(3);}
                     catch(Exception e){e.printStackTrace();}
                 }
+                // updates run at a fixed rate rather than waiting for every player, players only send input when it changes
+                long nextUpdate = System.currentTimeMillis();
                 while (active) {
-                    // wait until all players have given input
-                    long playerInputTime = waitForAllPlayerInput();
-      //              System.out.println("Got all of the player input after " + playerInputTime + " milliseconds");
-                    // see if extra waiting is needed to wait at least a certain time between inputs
-                    long extraWait = PLAYER_INPUT_WAIT_TIME - playerInputTime;
-                    if (extraWait > 0) {
+                    nextUpdate += UPDATE_TIME;
+                    long wait = nextUpdate - System.currentTimeMillis();
+                    if (wait > 0) {
                         try {
-                            Thread.sleep(extraWait);
+                            Thread.sleep(wait);
                         } catch (InterruptedException e) {
                             e.printStackTrace();
                         }
                     }
+                    // if an update ran long, start counting again from now instead of rushing to catch up
+                    else if (wait < -UPDATE_TIME){
+                        nextUpdate = System.currentTimeMillis();
+                    }
                     // gets the updates and send the updates to the server
                     for (int clientIndex = 0; clientIndex < clients.size(); clientIndex++){
-                        ArrayList<String> playerUpdates = clients.get(clientIndex).getPlayerUpdates();
+                        // take the updates out so each is given to the game once, and any arriving now wait for the next update
+                        ArrayList<String> playerUpdates = clients.get(clientIndex).takePlayerUpdates();
                         for (int i = 0; i < playerUpdates.size(); i++){
                             game.onPlayerMessage(clientIndex, playerUpdates.get(i));
                         }
-                        // set the update to be no input so the function will wait for input again
-                        clients.get(clientIndex).resetPlayerUpdate();
                     }
                     // have the server update all non-player elements
                     game.onPlayerMessage(0, END_PLAYER_UPDATE);
@@ -120,33 +124,6 @@ public class GameServer{
         }).start();
     }
 
-    /**
-     * Does nothing until each client has sent a player update input
-     * @return the time, in milliseconds, the function takes to wait
-     */
-    private long waitForAllPlayerInput(){
-        long startTime = System.currentTimeMillis();
-        for (int i = 0; i < clients.size(); i++){
-            // try catch in case a client leaves
-            try {
-                while (!clients.get(i).isUpdatedReceived()) {
-                    // wait here
-                    try {
-                        Thread.sleep(3);
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
-            }
-            catch (Exception e){
-                System.out.println("Problem waiting, likely a player left");
-                e.printStackTrace();
-                i = 0;  // restart and look at the remaining clients
-            }
-        }
-        return System.currentTimeMillis() - startTime;
-    }
-
     public boolean isActive(){return active;}
 
     /**
@@ -201,11 +178,9 @@ public class GameServer{
         private PrintWriter writer;
         private Socket socket;
         private boolean shuttingDown = false;  // used to tell when to expect exceptions
-        // a list of the updates for this player, will be read when the game is updating
+        // a list of the updates for this player, will be taken when the game is updating, only used holding the lock
+        // of the client handler
         private ArrayList<String> playerUpdates = new ArrayList<>();
-        // if updates have been received since the last server last read them
-        private boolean updatedReceived = false;
-        private boolean readingMessage = false;  // if a message from the client is currently being read
 
         /**
          * @param clientSocket the socket to use when communicating to the client
@@ -232,42 +207,29 @@ public class GameServer{
         }
 
         /**
-         * If the server has received a message since the server last read a message
-         * @return if a new message has been received
-         */
-        public boolean isUpdatedReceived(){
-            return updatedReceived;
-        }
-
-        /**
-         * Gives the current player updates strings
-         * @return the current player update, will be null if nothing has been sent to the server
-         */
-        public ArrayList<String> getPlayerUpdates(){
-            waitUntilNotReadingMessage();
-            return playerUpdates;
-        }
-
-        /**
-         * Sets the player update to be that nothing has been received, used after processing a message
+         * Takes the player updates received since the last call, the reader starts a new list for the updates after
+         * @return the player updates, empty if nothing has been received
          */
-        public void resetPlayerUpdate(){
-            updatedReceived = false;
-            waitUntilNotReadingMessage();
-            playerUpdates.clear();
+        public synchronized ArrayList<String> takePlayerUpdates(){
+            ArrayList<String> taken = playerUpdates;
+            playerUpdates = new ArrayList<>();
+            return taken;
         }
 
         /**
-         * Blocks until the reader is not currently reading a message from the client
+         * Adds a player update, replacing the waiting update of the same type so only the latest is applied
+         * @param newUpdate the update to add
          */
-        private void waitUntilNotReadingMessage(){
-            while (readingMessage){
-                try {
-                    Thread.sleep(3);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+        private synchronized void addPlayerUpdate(final String newUpdate){
+            // find the type of the new update, in case it overwrites an existing player update
+            String newUpdateType = newUpdate.split(DELIMITER)[0];
+            for (int j = 0; j < playerUpdates.size(); j++){
+                if (playerUpdates.get(j).startsWith(newUpdateType)){
+                    playerUpdates.set(j, newUpdate);
+                    return;
                 }
             }
+            playerUpdates.add(newUpdate);
         }
 
         /**
@@ -278,7 +240,6 @@ public class GameServer{
             try {
                 // do nothing until a message is received
                 while ((message = reader.readLine()) != null){
-                    readingMessage = true;
                     int index = clients.indexOf(this);
  //                   System.out.println("Received message in the reader at index " + index + " :" + message);
                     // if it is a player update, do not send the message to the server immediately but rather store it
@@ -288,37 +249,20 @@ public class GameServer{
                             // all of the actual updates
                             String[] newUpdates = message.split(UPDATE_DELIMITER);
                             for (int i = 1; i < newUpdates.length; i++){
-                                String newUpdate = newUpdates[i];
-                                // find the type of the new update, in case it overwrites an existing player update
-                                String newUpdateType = newUpdate.split(DELIMITER)[0];
-                                // check if the player update is already in the list, if so update it
-                                boolean alreadyInList = false;
-                                for (int j = 0; j < playerUpdates.size(); j++){
-                                    if (playerUpdates.get(j).startsWith(newUpdateType)){
-                                        // replace it with the new update
-                                        playerUpdates.set(j, newUpdate);
-                                        alreadyInList = true;
-                                        break;
-                                    }
-                                }
-                                // if it is not already in the list, add it to the list
-                                if (!alreadyInList){
-                                    playerUpdates.add(newUpdate);
-                                }
+                                addPlayerUpdate(newUpdates[i]);
                             }
                         }
 
-                        updatedReceived = true;
+                        updatesStarted = true;
                     }
                     // send the message immediately if it is not a player update in the game
                     else {
                         game.onPlayerMessage(index, message);
                     }
-                    readingMessage = false;
                 }
             }
             catch (Exception e){
-                System.out.println("Caught an exception in the server listening to a client");
+                Log.warn("Caught an exception in the server listening to a client");
                 if (!shuttingDown){
                     remove();
                 }
@@ -1,6 +1,6 @@
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
-import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * Handles keyboard input for the game
@@ -15,8 +15,13 @@ public class KeyInput implements KeyListener {
     public static final int A = 65;
     public static final int S = 83;
     public static final int D = 68;
+    public static final int F3 = 114;  // shows and hides the debug overlay
 
-    private ArrayList<Integer> pressedKeys = new ArrayList<Integer>();
+    // one bit for each key code, set while the key is down, written on the event thread and read on the input thread
+    private static final int KEY_CODES = 1024;  // key codes past this are ignored, the game only uses small ones
+    private final AtomicLongArray pressedKeys = new AtomicLongArray(KEY_CODES / Long.SIZE);
+    // read on the render thread, so changes need to be seen there
+    private volatile boolean debugShown = false;
 
     @Override
     public void keyTyped(KeyEvent e) {
@@ -26,15 +31,40 @@ public class KeyInput implements KeyListener {
     @Override
     public void keyPressed(KeyEvent e) {
   //      System.out.println("Key code " + e.getKeyCode() + " Pressed");
-        Integer keyCode = e.getKeyCode();
-        if (!pressedKeys.contains(keyCode)){
-            pressedKeys.add(keyCode);
+        int keyCode = e.getKeyCode();
+        // only toggle when the key goes down, not again on every repeat while it is held
+        if (setPressed(keyCode, true) && keyCode == F3){
+            debugShown = !debugShown;
         }
     }
 
     @Override
     public void keyReleased(KeyEvent e) {
-        pressedKeys.remove(Integer.valueOf(e.getKeyCode()));
+        setPressed(e.getKeyCode(), false);
+    }
+
+    /**
+     * Sets or clears the bit of a key without locking
+     * @param keyCode the key to change
+     * @param pressed whether or not the key is down
+     * @return whether or not the bit changed
+     */
+    private boolean setPressed(final int keyCode, final boolean pressed){
+        if (keyCode < 0 || keyCode >= KEY_CODES){
+            return false;
+        }
+        int index = keyCode / Long.SIZE;
+        long bit = 1L << (keyCode % Long.SIZE);
+        while (true){
+            long bits = pressedKeys.get(index);
+            long newBits = pressed ? bits | bit : bits & ~bit;
+            if (bits == newBits){
+                return false;
+            }
+            if (pressedKeys.compareAndSet(index, bits, newBits)){
+                return true;
+            }
+        }
     }
 
     /**
@@ -42,9 +72,12 @@ public class KeyInput implements KeyListener {
      * @param keyCode the key to determine if it is pressed
      * @return whether or not the key is pressed
      */
-    public boolean isPressed(final Integer keyCode){
-        return pressedKeys.contains(keyCode);
+    public boolean isPressed(final int keyCode){
+        if (keyCode < 0 || keyCode >= KEY_CODES){
+            return false;
+        }
+        return (pressedKeys.get(keyCode / Long.SIZE) & (1L << (keyCode % Long.SIZE))) != 0;
     }
 
-    public ArrayList<Integer> getPressedKeys(){return pressedKeys;}
+    public boolean isDebugShown(){return debugShown;}
 }
@@ -1,8 +1,12 @@
 import java.awt.*;
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
+import java.io.*;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * A layout of players and walls to start a game
@@ -12,10 +16,33 @@ public class Layout {
     private static final char HORIZONTAL_WALL = '-';
     private static final char VERTICAL_WALL = '|';
     private static final char PLAYER = 'p';
+    private static final char MARKET = 'm';
+    public static final String COMPILED_EXTENSION = ".bin";  // added to the path of a layout for its compiled copy
+    private static final int MAGIC = 0x53534C59;  // "SSLY", the start of every compiled layout
+    private static final int VERSION = 3;
+    private static final int WALL_SIZE = 4;  // ints for each wall
+
+    /**
+     * Loads a layout, mapping the compiled copy of it if there is one that is at least as new as the text
+     * @param path the path of the text file of the layout, the compiled copy has COMPILED_EXTENSION added
+     * @return the layout, or null if it could not be read
+     */
+    public static Layout load(final String path){
+        File text = new File(path);
+        File compiled = new File(path + COMPILED_EXTENSION);
+        if (compiled.isFile() && compiled.lastModified() >= text.lastModified()){
+            Layout l = loadCompiled(compiled);
+            if (l != null){
+                return l;
+            }
+        }
+        return loadFromFile(text);
+    }
 
     /**
      * Reads a layout from a text file, using the special characters to represent map elements. The last line of the
-     * text file is a number giving the scale from characters to map pixels
+     * text file is a number giving the scale from characters to map pixels. Rows shorter than the longest row are
+     * treated as ending in spaces. The wall characters are merged into as few rectangular walls as can be found
      * @param layoutFile the file with the text that represents the layout
      * @return a layout made from the file
      */
@@ -23,8 +50,7 @@ public class Layout {
         ArrayList<String> map = new ArrayList<>();
         int maxLineLength = -1;
         // read the file into the map
-        try{
-            BufferedReader reader = new BufferedReader(new FileReader(layoutFile));
+        try (BufferedReader reader = new BufferedReader(new FileReader(layoutFile))){
             String line;
             while ((line = reader.readLine()) != null){
                 if (line.length() > maxLineLength){
@@ -37,66 +63,303 @@ public class Layout {
             e.printStackTrace();
             return null;
         }
-        int scale = Integer.valueOf(map.get(map.size() - 1));
+        int scale = Integer.valueOf(map.get(map.size() - 1).trim());
         map.remove(map.size() - 1);  // remove the scale because it is not part of the map
-        // pad the map with extra spaces at the end
-        for (int row = 0; row < map.size(); row++){
-            while (map.get(row).length() < maxLineLength){
-                map.set(row, map.get(row) + " ");
-            }
-        }
         Layout l = new Layout();
-        l.width = maxLineLength * scale;
-        l.height = map.size() * scale;
+        l.scale = scale;
+        l.columns = maxLineLength;
+        l.rows = map.size();
+        l.width = l.columns * scale;
+        l.height = l.rows * scale;
+        long[] wallCells = new long[(l.columns * l.rows + 63) / 64];
+        l.wallCells = LongBuffer.wrap(wallCells);
         // go through each row and each column, adding features
-        for (int row = 0; row < map.size(); row++){
-            for (int col = 0; col < map.get(row).length(); col++){
-                char c = map.get(row).charAt(col);
+        for (int row = 0; row < l.rows; row++){
+            for (int col = 0; col < l.columns; col++){
+                char c = charAt(map, col, row);
+                if (c == HORIZONTAL_WALL || c == VERTICAL_WALL){
+                    int cell = row * l.columns + col;
+                    wallCells[cell >> 6] |= 1L << cell;
+                }
                 // if it is a player location
                 if (c == PLAYER){
                     l.playerSpawns.add(new Point(col * scale, row * scale));
                 }
-                // if it is a horizontal wall
-                if (c == HORIZONTAL_WALL){
-                    String rowString = map.get(row);
-                    // check if is the left-most part
-                    if (col == 0 || rowString.charAt(col - 1) != HORIZONTAL_WALL){
-                        int colEnd = col;
-                        // walk through until reaching the right end of the wall
-                        while (colEnd != rowString.length() - 1 && rowString.charAt(colEnd + 1) == HORIZONTAL_WALL){
-                            colEnd++;
-                        }
-                        // add the horizontal wall to the layout
-                        l.elements.add(new Wall(new Rectangle(col * scale, row * scale, (colEnd - col + 1) * scale, scale)));
-                    }
+                if (c == MARKET){
+                    l.marketSlots.add(new Point(col * scale, row * scale));
                 }
-                // if it is a vertical wall
-                if (c == VERTICAL_WALL){
-                    // check if it the top part of the wall
-                    if (row == 0 || map.get(row - 1).charAt(col) != VERTICAL_WALL){
-                        // walk down the wall until reaching the bottom
-                        int rowEnd = row;
-                        while (rowEnd != map.size() - 1 && map.get(rowEnd + 1).charAt(col) == VERTICAL_WALL){
-                            rowEnd++;
-                        }
-                        // add the vertical wall to the layout
-                        l.elements.add(new Wall(new Rectangle(col * scale, row * scale, scale, (rowEnd - row + 1) * scale)));
-                    }
+                // count the walls the text gives, runs of '-' across and of '|' down, to compare with the merged walls
+                if ((c == HORIZONTAL_WALL && charAt(map, col - 1, row) != HORIZONTAL_WALL)
+                        || (c == VERTICAL_WALL && charAt(map, col, row - 1) != VERTICAL_WALL)){
+                    l.unmergedWallCount++;
                 }
             }
         }
+        l.mergeWalls(wallCells);
+        return l;
+    }
 
+    /**
+     * Makes a layout from a grid of wall cells, such as a generated maze, merging the wall cells into rectangles
+     * @param columns number of columns in the grid
+     * @param rows number of rows in the grid
+     * @param scale width of each cell in map pixels
+     * @param wallCells one bit for each cell, row by row, set if the cell is part of a wall
+     * @param spawns the cells the players start in
+     * @param markets the cells markets can be placed in
+     * @return the layout
+     */
+    public static Layout fromWallCells(final int columns, final int rows, final int scale, final long[] wallCells,
+                                       final ArrayList<Point> spawns, final ArrayList<Point> markets){
+        Layout l = new Layout();
+        l.scale = scale;
+        l.columns = columns;
+        l.rows = rows;
+        l.width = columns * scale;
+        l.height = rows * scale;
+        l.wallCells = LongBuffer.wrap(wallCells);
+        for (Point spawn : spawns){
+            l.playerSpawns.add(new Point(spawn.x * scale, spawn.y * scale));
+        }
+        for (Point market : markets){
+            l.marketSlots.add(new Point(market.x * scale, market.y * scale));
+        }
+        // count the walls there would be without merging: the runs of two or more wall cells along each row, then
+        // the runs down each column of the wall cells left on their own in their row
+        for (int row = 0; row < rows; row++){
+            for (int col = 0; col < columns; col++){
+                if (isSet(wallCells, row * columns + col) && !isAloneInRow(wallCells, columns, col, row)
+                        && (col == 0 || !isSet(wallCells, row * columns + col - 1))){
+                    l.unmergedWallCount++;
+                }
+            }
+        }
+        for (int col = 0; col < columns; col++){
+            for (int row = 0; row < rows; row++){
+                if (isSet(wallCells, row * columns + col) && isAloneInRow(wallCells, columns, col, row)
+                        && (row == 0 || !isSet(wallCells, (row - 1) * columns + col) || !isAloneInRow(wallCells, columns, col, row - 1))){
+                    l.unmergedWallCount++;
+                }
+            }
+        }
+        l.mergeWalls(wallCells);
         return l;
     }
 
+    /**
+     * Covers the wall cells with as few rectangles as the greedy search finds. Going row by row, each wall cell not
+     * covered yet starts a rectangle that is stretched right as far as the row allows, then down for as long as the
+     * whole width is wall cells not covered yet. The rectangles do not overlap and cover exactly the wall cells
+     * @param wallCells one bit for each cell, row by row, set if the cell is part of a wall
+     */
+    private void mergeWalls(final long[] wallCells){
+        long[] covered = new long[wallCells.length];
+        for (int row = 0; row < rows; row++){
+            for (int col = 0; col < columns; col++){
+                int cell = row * columns + col;
+                if (!isSet(wallCells, cell) || isSet(covered, cell)){
+                    continue;
+                }
+                int colEnd = col + 1;
+                while (colEnd < columns && isFree(wallCells, covered, row * columns + colEnd)){
+                    colEnd++;
+                }
+                int rowEnd = row + 1;
+                while (rowEnd < rows && isFreeRun(wallCells, covered, rowEnd * columns + col, colEnd - col)){
+                    rowEnd++;
+                }
+                for (int r = row; r < rowEnd; r++){
+                    for (int c = r * columns + col; c < r * columns + colEnd; c++){
+                        covered[c >> 6] |= 1L << c;
+                    }
+                }
+                addWall(col, row, colEnd - col, rowEnd - row);
+                col = colEnd - 1;
+            }
+        }
+        wallRuns = IntBuffer.wrap(wallData, 0, numWalls * WALL_SIZE);
+    }
+
+    private static boolean isFree(final long[] wallCells, final long[] covered, final int cell){
+        return isSet(wallCells, cell) && !isSet(covered, cell);
+    }
+
+    /**
+     * If a run of cells along a row are all wall cells that are not covered yet
+     */
+    private static boolean isFreeRun(final long[] wallCells, final long[] covered, final int start, final int length){
+        for (int cell = start; cell < start + length; cell++){
+            if (!isFree(wallCells, covered, cell)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSet(final long[] bits, final int index){return (bits[index >> 6] & (1L << index)) != 0;}
+
+    /**
+     * If a cell has no wall cell on either side of it in its row, not wrapping around the sides
+     */
+    private static boolean isAloneInRow(final long[] wallCells, final int columns, final int col, final int row){
+        return (col == 0 || !isSet(wallCells, row * columns + col - 1))
+                && (col == columns - 1 || !isSet(wallCells, row * columns + col + 1));
+    }
+
+    /**
+     * Adds a wall while merging the wall cells, growing the array of walls when it is full
+     */
+    private void addWall(final int column, final int row, final int width, final int height){
+        if ((numWalls + 1) * WALL_SIZE > wallData.length){
+            wallData = Arrays.copyOf(wallData, Math.max(wallData.length * 2, WALL_SIZE * 16));
+        }
+        int index = numWalls * WALL_SIZE;
+        wallData[index] = column;
+        wallData[index + 1] = row;
+        wallData[index + 2] = width;
+        wallData[index + 3] = height;
+        numWalls++;
+    }
+
+    /**
+     * The character at a place in the text of a layout, without padding the rows
+     * @param map the rows of the layout
+     * @param col the column, may be past the end of the row
+     * @param row the row, may be outside the layout
+     * @return the character, or a space if the place is outside the text
+     */
+    private static char charAt(final ArrayList<String> map, final int col, final int row){
+        if (row < 0 || row >= map.size() || col < 0 || col >= map.get(row).length()){
+            return ' ';
+        }
+        return map.get(row).charAt(col);
+    }
+
+    /**
+     * Writes the layout in the compiled format read by loadCompiled(). Everything is in cells rather than pixels:
+     * a header, the spawn and market tables, each wall as a rectangle of cells, and the bitmap of wall cells
+     * @param file the file to write to
+     * @throws IOException if the file could not be written
+     */
+    public void writeCompiled(final File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))){
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(scale);
+            out.writeInt(columns);
+            out.writeInt(rows);
+            out.writeInt(playerSpawns.size());
+            out.writeInt(marketSlots.size());
+            out.writeInt(getWallCount());
+            out.writeInt(unmergedWallCount);
+            for (Point spawn : playerSpawns){
+                out.writeInt(spawn.x / scale);
+                out.writeInt(spawn.y / scale);
+            }
+            for (Point market : marketSlots){
+                out.writeInt(market.x / scale);
+                out.writeInt(market.y / scale);
+            }
+            for (int i = 0; i < wallRuns.limit(); i++){
+                out.writeInt(wallRuns.get(i));
+            }
+            for (int i = 0; i < wallCells.limit(); i++){
+                out.writeLong(wallCells.get(i));
+            }
+        }
+    }
+
+    /**
+     * Maps a layout written by writeCompiled() into memory. The walls and the bitmap of wall cells are read straight
+     * from the mapped file rather than copied, so large layouts load quickly and the operating system shares the
+     * pages between every game using the same layout
+     * @param file the compiled layout
+     * @return the layout, or null if the file could not be read or is not a compiled layout
+     */
+    public static Layout loadCompiled(final File file){
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION){
+                Log.warn("Not a compiled layout: %s", file);
+                return null;
+            }
+            Layout l = new Layout();
+            l.scale = buffer.getInt();
+            l.columns = buffer.getInt();
+            l.rows = buffer.getInt();
+            l.width = l.columns * l.scale;
+            l.height = l.rows * l.scale;
+            int numSpawns = buffer.getInt();
+            int numMarkets = buffer.getInt();
+            int numWalls = buffer.getInt();
+            l.unmergedWallCount = buffer.getInt();
+            for (int i = 0; i < numSpawns; i++){
+                l.playerSpawns.add(new Point(buffer.getInt() * l.scale, buffer.getInt() * l.scale));
+            }
+            for (int i = 0; i < numMarkets; i++){
+                l.marketSlots.add(new Point(buffer.getInt() * l.scale, buffer.getInt() * l.scale));
+            }
+            // the walls and the bitmap are read from the mapping when used, which stays valid after the channel is closed
+            int wallsStart = buffer.position();
+            int wallsEnd = wallsStart + numWalls * WALL_SIZE * Integer.BYTES;
+            buffer.limit(wallsEnd);
+            l.wallRuns = buffer.slice().asIntBuffer();
+            buffer.limit(wallsEnd + (l.columns * l.rows + 63) / 64 * Long.BYTES);
+            buffer.position(wallsEnd);
+            l.wallCells = buffer.slice().asLongBuffer();
+            return l;
+        }
+        catch (Exception e){
+            e.printStackTrace();
+            return null;
+        }
+    }
+
     private int width;
     private int height;
-    private ArrayList<MapElement> elements = new ArrayList<>();
+    // the grid of characters the layout was made from, each cell is scale pixels wide
+    private int scale;
+    private int columns;
+    private int rows;
+    private LongBuffer wallCells;  // one bit for each cell, set if the cell is part of a wall
+    // the column, row, width, and height in cells of each wall, a rectangle of wall cells
+    private IntBuffer wallRuns;
+    // the walls while the wall cells are being merged
+    private int[] wallData = new int[0];
+    private int numWalls = 0;
+    private int unmergedWallCount = 0;  // walls there would be without merging, the runs of wall characters or cells
     private ArrayList<Point> playerSpawns = new ArrayList<>();
+    private ArrayList<Point> marketSlots = new ArrayList<>();  // where markets can be placed
+
+    public int getWallCount(){return wallRuns.limit() / WALL_SIZE;}
+    public int getUnmergedWallCount(){return unmergedWallCount;}
 
-    public ArrayList<MapElement> getElements(){return elements;}
+    /**
+     * Finds the area covered by a wall, in map pixels
+     * @param index the index of the wall
+     * @param wall the rectangle to set to the area of the wall, so looking at every wall allocates nothing
+     */
+    public void getWall(final int index, final Rectangle wall){
+        int i = index * WALL_SIZE;
+        wall.setBounds(wallRuns.get(i) * scale, wallRuns.get(i + 1) * scale, wallRuns.get(i + 2) * scale, wallRuns.get(i + 3) * scale);
+    }
     public ArrayList<Point> getPlayerSpawns(){return playerSpawns;}
+    public ArrayList<Point> getMarketSlots(){return marketSlots;}
     public int getWidth(){return width;}
     public int getHeight(){return height;}
+    public int getScale(){return scale;}
+    public int getColumns(){return columns;}
+    public int getRows(){return rows;}
+
+    /**
+     * If the cell is part of a wall, wrapping the column and row around the grid
+     * @param column the column of the cell, may be outside the grid
+     * @param row the row of the cell, may be outside the grid
+     * @return whether or not the cell is part of a wall
+     */
+    public boolean isWall(final int column, final int row){
+        int cell = Math.floorMod(row, rows) * columns + Math.floorMod(column, columns);
+        return (wallCells.get(cell >> 6) & (1L << cell)) != 0;
+    }
 
 }
@@ -0,0 +1,25 @@
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * What to run to compile a text layout into the binary format the game maps into memory
+ */
+public class LayoutCompiler {
+    public static void main(String[] args){
+        String path = args.length > 0 ? args[0] : Map.LAYOUT_PATH;
+        Layout layout = Layout.loadFromFile(new File(path));
+        if (layout == null){
+            System.out.println("Could not read the layout at " + path);
+            return;
+        }
+        File compiled = new File(path + Layout.COMPILED_EXTENSION);
+        try {
+            layout.writeCompiled(compiled);
+            System.out.println("Compiled " + path + " to " + compiled + ", " + layout.getWallCount() + " walls (merged from "
+                    + layout.getUnmergedWallCount() + "), "
+                    + layout.getPlayerSpawns().size() + " spawns");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes messages to the console without making the thread that logs them wait. A message and its arguments are put
+ * in a ring buffer without taking a lock, and a background thread formats and prints them. If the buffer is full the
+ * message is dropped and counted rather than waiting for room, so logging from an update never makes it take longer.
+ * The lowest level printed can be set with -Dstarstone.log=DEBUG, messages below it are ignored before anything is
+ * stored
+ */
+public class Log {
+
+    // levels, from the least to the most important
+    public static final int DEBUG = 0;
+    public static final int INFO = 1;
+    public static final int WARN = 2;
+    public static final int ERROR = 3;
+    private static final String[] LEVEL_NAMES = {"DEBUG", "INFO", "WARN", "ERROR"};
+
+    private static final int CAPACITY = 1024;  // messages the buffer holds, a power of two
+    private static final int MASK = CAPACITY - 1;
+    private static final long DRAIN_INTERVAL = 10000000L;  // nanoseconds the background thread waits when there is nothing to print
+
+    private static volatile int level = findLevel();
+
+    // the ring buffer, each slot has a sequence number saying whether it is free for a position or holds a message
+    private static final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+    private static final int[] levels = new int[CAPACITY];
+    private static final long[] times = new long[CAPACITY];
+    private static final String[] threads = new String[CAPACITY];
+    private static final String[] formats = new String[CAPACITY];
+    private static final Object[] firstArgs = new Object[CAPACITY];
+    private static final Object[] secondArgs = new Object[CAPACITY];
+    private static final AtomicLong tail = new AtomicLong();  // next position to write to, shared by every logging thread
+    private static long head = 0;  // next position to print, only used while holding the lock of the class
+    private static final AtomicLong dropped = new AtomicLong();  // messages dropped since the last print
+
+    private static final SimpleDateFormat TIME_FORMAT = new SimpleDateFormat("HH:mm:ss.SSS");
+    private static final StringBuilder line = new StringBuilder();
+
+    static {
+        for (int i = 0; i < CAPACITY; i++){
+            sequences.set(i, i);
+        }
+        Thread drain = new Thread(() -> {
+            while (true){
+                if (!drain()){
+                    LockSupport.parkNanos(DRAIN_INTERVAL);
+                }
+            }
+        }, "log-drain");
+        drain.setDaemon(true);
+        drain.start();
+        // print what is left when the program ends
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::drain, "log-flush"));
+    }
+
+    /**
+     * Reads the lowest level to print from the starstone.log system property
+     * @return the level, INFO if the property is not set or not a level
+     */
+    private static int findLevel(){
+        String name = System.getProperty("starstone.log", LEVEL_NAMES[INFO]);
+        for (int i = 0; i < LEVEL_NAMES.length; i++){
+            if (LEVEL_NAMES[i].equalsIgnoreCase(name)){
+                return i;
+            }
+        }
+        return INFO;
+    }
+
+    public static void setLevel(final int level){Log.level = level;}
+    public static boolean isEnabled(final int level){return level >= Log.level;}
+
+    public static void debug(final String format){log(DEBUG, format, null, null);}
+    public static void debug(final String format, final Object arg){log(DEBUG, format, arg, null);}
+    public static void debug(final String format, final Object arg1, final Object arg2){log(DEBUG, format, arg1, arg2);}
+    public static void info(final String format){log(INFO, format, null, null);}
+    public static void info(final String format, final Object arg){log(INFO, format, arg, null);}
+    public static void info(final String format, final Object arg1, final Object arg2){log(INFO, format, arg1, arg2);}
+    public static void warn(final String format){log(WARN, format, null, null);}
+    public static void warn(final String format, final Object arg){log(WARN, format, arg, null);}
+    public static void error(final String format){log(ERROR, format, null, null);}
+    public static void error(final String format, final Object arg){log(ERROR, format, arg, null);}
+
+    /**
+     * Puts a message in the buffer to be printed, or drops it if the buffer is full. The message is only formatted
+     * when it is printed, so the arguments should not be changed after they are logged
+     * @param level the level of the message
+     * @param format the message, in the format of String.format, with up to two arguments
+     * @param arg1 the first argument, may be null
+     * @param arg2 the second argument, may be null
+     */
+    public static void log(final int level, final String format, final Object arg1, final Object arg2){
+        if (level < Log.level){
+            return;
+        }
+        long position = tail.get();
+        while (true){
+            int slot = (int) (position & MASK);
+            long difference = sequences.get(slot) - position;
+            if (difference == 0){
+                // the slot is free for this position, claim it
+                if (tail.compareAndSet(position, position + 1)){
+                    break;
+                }
+                position = tail.get();
+            }
+            else if (difference < 0){
+                // the slot still holds a message from a lap ago, so the buffer is full
+                dropped.incrementAndGet();
+                return;
+            }
+            else {
+                // another thread claimed the position first
+                position = tail.get();
+            }
+        }
+        int slot = (int) (position & MASK);
+        levels[slot] = level;
+        times[slot] = System.currentTimeMillis();
+        threads[slot] = Thread.currentThread().getName();
+        formats[slot] = format;
+        firstArgs[slot] = arg1;
+        secondArgs[slot] = arg2;
+        // publish the message, the fields written above are seen by whoever sees the new sequence
+        sequences.set(slot, position + 1);
+    }
+
+    /**
+     * Prints every message in the buffer that is ready
+     * @return whether or not anything was printed
+     */
+    private static synchronized boolean drain(){
+        boolean printed = false;
+        long lost = dropped.getAndSet(0);
+        if (lost > 0){
+            System.out.println(TIME_FORMAT.format(new Date()) + " " + LEVEL_NAMES[WARN] + " [log] dropped " + lost + " messages");
+            printed = true;
+        }
+        while (true){
+            int slot = (int) (head & MASK);
+            if (sequences.get(slot) != head + 1){
+                break;
+            }
+            line.setLength(0);
+            line.append(TIME_FORMAT.format(new Date(times[slot]))).append(' ').append(LEVEL_NAMES[levels[slot]])
+                    .append(" [").append(threads[slot]).append("] ");
+            try {
+                line.append(String.format(formats[slot], firstArgs[slot], secondArgs[slot]));
+            } catch (RuntimeException e){
+                line.append(formats[slot]);
+            }
+            System.out.println(line);
+            // let go of the arguments and free the slot for the next lap
+            firstArgs[slot] = null;
+            secondArgs[slot] = null;
+            sequences.set(slot, head + CAPACITY);
+            head++;
+            printed = true;
+        }
+        return printed;
+    }
+}
@@ -1,12 +1,11 @@
-import javax.imageio.ImageIO;
 import java.awt.*;
-import java.awt.geom.AffineTransform;
 import java.awt.geom.Line2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.ImageObserver;
-import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Class that manages all of the players and objects in the map
@@ -18,32 +17,78 @@ public class Map {
     public static final int VIEW_HEIGHT = 600;
     public static final int MAX_NUM_PLAYERS = 3;
     public static final int MIN_NUM_PLAYERS = 2;
-    public static final int IMAGE_TYPE = BufferedImage.TYPE_4BYTE_ABGR;
-    private static final String BACKGROUND_IMAGE_PATH = "src/Images/background.png";
+    public static final String BACKGROUND_IMAGE_PATH = "src/Images/background.png";
+    public static final String LAYOUT_PATH = "src/Layouts/Layout1";
     private static final int PLAYER_HEALTH_BAR_OFFSET = 10;
-
-    // map to display all elements that never move
-    private BufferedImage backgroundMap;
-    // map to display all elements, used in conjunction with the background map for quick animation
-    private BufferedImage fullMap;
-
+    // bullets are redrawn using a square three bullets wide around the bullet
+    private static final int BULLET_REDRAW_WIDTH = BulletStore.WIDTH * 3;
+    // smallest size of the cells used to find what to draw in a changed area
+    private static final int DRAW_CELL_SIZE = 64;
+    // with at least this many bullets, bullets are swept and moved on several threads
+    private static final int PARALLEL_BULLETS = 4096;
+    // most bullets swept or moved by one thread at a time
+    private static final int PARALLEL_BATCH = 1024;
+
+    // image repeated across the map behind every element
+    private BufferedImage backgroundImage;
+    // the drawn map, only keeping the tiles near where it has been shown
+    private TileCache tiles = new TileCache(this::drawArea);
+
+    private Layout layout;  // the layout the map was made from, used for its grid of wall cells
     private ArrayList<StarStonePlayer> players = new ArrayList<>();
-    private ArrayList<MapElement> elements = new ArrayList<>();
+    // the walls and any other elements that are not players or bullets
+    private EntityStore entities;
+    private BulletStore bullets = new BulletStore();
+    private Pathfinding pathfinding;  // flow fields toward each player, for anything chasing the players
+    private int tick = 0;  // number of updates so far, the same on the server and every client
+    private PlayerHistory history = new PlayerHistory();  // where the players were in the last few updates
+    // read-only copies of the hulls of the active players (null if inactive) during an update
+    private Bounds[] playerHullSnapshot = new Bounds[0];
+    // the bullets hitting something during an update, as the bits of the hit time followed by the bullet index
+    private long[] hitOrder = new long[BulletStore.CAPACITY];
+    // the areas of the map that changed since it was last drawn, and grids to find what is in each area
+    private DirtyRegions dirtyRegions = new DirtyRegions();
+    private SpatialGrid entityGrid = new SpatialGrid(DRAW_CELL_SIZE);
+    private int entityGridVersion = -1;  // the version of the entities the grid was made from
+    private SpatialGrid bulletGrid = new SpatialGrid(DRAW_CELL_SIZE);
+    private int[] found;  // the items found by a query of one of the grids, large enough for every entity or bullet
+    private Rectangle playerArea = new Rectangle();
+    private Rectangle clipArea = new Rectangle();  // the area being drawn, only images inside of it are copied
+    // whether the bounds, redraw areas and shoot locations are drawn over the elements, off unless debugging
+    private boolean debugDrawn = false;
 
     /**
-     * Creates the map and adds the players
+     * Creates the map from the layout file and adds the players
      * @param players the players to join the game
      */
     public Map(ArrayList<StarStonePlayer> players){
-        File f = new File("src/Layouts/Layout1");
-        Layout l = Layout.loadFromFile(f);
+        this(players, Layout.load(LAYOUT_PATH));
+    }
+
+    /**
+     * Creates the map from a layout and adds the players
+     * @param players the players to join the game
+     * @param l the layout of the map, such as a generated maze
+     */
+    public Map(ArrayList<StarStonePlayer> players, final Layout l){
+        layout = l;
+        pathfinding = new Pathfinding(l);
         WIDTH = l.getWidth();
         HEIGHT = l.getHeight();
-        System.out.println("WIDTH is " + WIDTH);
-        System.out.println("HEIGHT is " + HEIGHT);
-        backgroundMap = new BufferedImage(WIDTH, HEIGHT, IMAGE_TYPE);
-        fullMap = new BufferedImage(WIDTH, HEIGHT, IMAGE_TYPE);
-        elements = l.getElements();
+        Log.info("WIDTH is %d", WIDTH);
+        Log.info("HEIGHT is %d", HEIGHT);
+        Log.info("Walls: %d before merging, %d after", l.getUnmergedWallCount(), l.getWallCount());
+        // every wall of the layout is an entity, with room left for entities added during the game
+        entities = new EntityStore(l.getWallCount() + EntityStore.EXTRA_CAPACITY);
+        found = new int[Math.max(entities.getCapacity(), BulletStore.CAPACITY)];
+        Rectangle wall = new Rectangle();
+        for (int i = 0; i < l.getWallCount(); i++){
+            l.getWall(i, wall);
+            if (entities.spawnWall(wall) == -1){
+                throw new IllegalStateException("No room for wall " + i + " of " + l.getWallCount());
+            }
+        }
+        entities.addSpawned();
 
         for (int i = 0; i < players.size(); i++){
             if (players.get(i).isSetUp()){
@@ -52,45 +97,11 @@ public class Map {
 
             }
         }
-        Graphics g = backgroundMap.getGraphics();
-        BufferedImage backgroundImage = null;
-        try {
-            backgroundImage = ImageIO.read(new File(BACKGROUND_IMAGE_PATH));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        int x = 0;
-        int y = 0;
-        while (x < WIDTH){
-            while (y < HEIGHT){
-                g.drawImage(backgroundImage, x, y, null);
-                y += backgroundImage.getHeight();
-            }
-            x += backgroundImage.getWidth();
-            y = 0;
-        }
-        //g.setColor(BACKGROUND);
-        //g.fillRect(0,0,WIDTH,HEIGHT);
-        g.setColor(Color.RED);
-        g.drawRect(0,0,WIDTH,HEIGHT);
-
-        // copy the background to the full map
-        g = fullMap.getGraphics();
-        g.drawImage(backgroundMap, 0, 0, null);
+        backgroundImage = Assets.getImage(BACKGROUND_IMAGE_PATH);
+        tiles.reset();
 
-
-        for (MapElement e : elements){
-            drawElement(e);
-        }
-        drawPlayers();
-    }
-
-    /**
-     * Adds the given element to the map
-     * @param e the element to add
-     */
-    public void addElement(MapElement e){
-        elements.add(e);
+        // the grids used to find what to draw are made the first time the map is shown
+        markDirty(0, 0, WIDTH, HEIGHT);
     }
 
     /**
@@ -103,23 +114,25 @@ public class Map {
      * @return if the translation was successful (no collisions)
      */
     public boolean translatePlayer(final int playerIndex, final int dx, final int dy, final boolean server){
-        // save the current bounds so it can be drawn over with the background later
-        RectBounds oldBounds = players.get(playerIndex).getBounds();
+        // mark where the player was so it can be drawn over with the background later
+        if (!server){
+            markDirty(players.get(playerIndex));
+        }
         //Rectangle playerRect = players.get(playerIndex).getBounds().getRect();
         players.get(playerIndex).translate(dx, dy);
 
         // if need to check for collisions
         if (server){
             // if there is a collision, undo the translation
-            if (collides(players.get(playerIndex)) != null){
+            if (collides(players.get(playerIndex))){
                 players.get(playerIndex).translate(-dx, -dy);
-                System.out.println("There was a collision, so undoing translation");
+                Log.debug("There was a collision, so undoing translation");
                 return false;
             }
         }
         // if not the server then drawing must occur
         else {
-            redrawBackground(oldBounds);
+            markDirty(players.get(playerIndex));
         }
         return true;
     }
@@ -131,29 +144,100 @@ public class Map {
      * @param server if the server is calling the function, if so there is no need to do the drawing
      */
     public void rotatePlayer(final int playerIndex, final double angle, final boolean server){
-        // save the old bounds for drawing over
-        RectBounds oldBounds = players.get(playerIndex).getBounds();
+        // mark the area before and after turning for drawing over
+        if (!server) {
+            markDirty(players.get(playerIndex));
+        }
         players.get(playerIndex).setAngle(angle);
         if (!server) {
-            redrawBackground(oldBounds);
+            markDirty(players.get(playerIndex));
         }
     }
 
     /**
-     * Handles actions associated with the player at the given index shooting a bullet
+     * Handles actions associated with the player at the given index shooting a bullet. A player sees the map some
+     * updates after the server has moved on, so the bullet is moved on by those updates at once, checked against
+     * where the other players were in each of them. The shot then hits what the shooter was aiming at. Only the
+     * server checks if the player has reloaded, clients apply the shots the server has allowed
      * @param playerIndex the index of the player that is attempting to shoot
+     * @param rewindTicks how many updates behind the shooter was, from getRewindTicks()
+     * @param server if the server is calling the function, if so there is no need to do the drawing
+     * @return whether or not the player was able to shoot, always true for clients
+     */
+    public boolean playerShootBullet(final int playerIndex, final int rewindTicks, final boolean server){
+        StarStonePlayer p = players.get(playerIndex);
+        // the clock of a client does not match the server, so only the server decides if the player has reloaded
+        if (server && !p.shootBullet()){
+            return false;
+        }
+        Point shootLocation = p.getShootLocation();
+        // make sure the bullet does not collide with any elements or bullets
+        if (entities.intersects(shootLocation.x, shootLocation.y, BulletStore.WIDTH, BulletStore.WIDTH) != -1
+                || bullets.overlaps(shootLocation)){
+            return true;
+        }
+        int index = bullets.spawn(shootLocation, p.getAngle(), playerIndex);
+        if (index != -1 && rewindTicks > 0){
+            catchUpBullet(index, playerIndex, rewindTicks, server);
+        }
+        return true;
+    }
+
+    /**
+     * How many updates behind a player was, limited to the updates the map still knows the players' places for
+     * @param shownTick the last update the player had shown when they acted, from getTick() on their map
+     * @return the number of updates to rewind, 0 if the player was up to date
+     */
+    public int getRewindTicks(final int shownTick){
+        int ticks = Math.max(0, Math.min(tick - shownTick, PlayerHistory.TICKS - 1));
+        while (ticks > 0 && !history.has(tick - ticks + 1)){
+            ticks--;
+        }
+        return ticks;
+    }
+
+    /**
+     * Moves a new bullet through the updates its shooter was behind by, checking it against the walls and against
+     * the other players where they were in each update. The shooter is left out, as the bullet starts inside them
+     * and can not travel far enough in these updates to come back around to them. Bullets are not checked against
+     * each other, as the other bullets are only known as they are now
+     * @param index the index of the bullet, which has been spawned but not added
+     * @param shooter the index of the player that shot the bullet
+     * @param rewindTicks how many updates to move the bullet through
+     * @param server if the server is calling the function, if so there is no need to do the drawing
      */
-    public void playerShootBullet(final int playerIndex){
-        Bullet b = players.get(playerIndex).shootBullet();
-        // if the bullet was shot successfully
-        if (b != null){
-            // make sure the bullet does not collide with any elements
-            for (MapElement e : elements){
-                if (RectBounds.boundsIntersect(e.getBounds(), b.getBounds())){
-                    return;
+    private void catchUpBullet(final int index, final int shooter, final int rewindTicks, final boolean server){
+        takeSnapshot();
+        playerHullSnapshot[shooter] = null;
+        for (int t = tick - rewindTicks + 1; t <= tick; t++){
+            for (int i = 0; i < players.size(); i++){
+                StarStonePlayer p = players.get(i);
+                if (p.isActive() && i != shooter){
+                    playerHullSnapshot[i] = history.getHull(t, i, p.getHull());
                 }
             }
-            elements.add(b);
+            sweepBullet(index, false);
+            int type = bullets.getHitType(index);
+            if (type == BulletStore.HIT_NOTHING){
+                bullets.move(index);
+                continue;
+            }
+            int hit = bullets.getHitIndex(index);
+            bullets.cancelSpawn();
+            if (type == BulletStore.HIT_ELEMENT){
+                entities.damage(hit, bullets.getDamage(index));
+                if (!server && entities.isDead(hit)){
+                    markEntityDirty(hit);
+                }
+            }
+            else if (type == BulletStore.HIT_PLAYER){
+                StarStonePlayer p = players.get(hit);
+                p.onCollide(bullets.getDamage(index));
+                if (!server){
+                    markDirty(p);
+                }
+            }
+            return;
         }
     }
 
@@ -163,300 +247,649 @@ public class Map {
      * @param server if the calling function is the server, determines if drawing occurs
      */
     public void handleMapElements(final boolean server){
-        int index = 0;
-        while (index < elements.size()){
-            boolean moveToNextElement = true;  // if index should increase to the next element
-            MapElement e = elements.get(index);
-            // if it is a bullet, move and check for collisions
-            if (e.getClass() == Bullet.class){
-                RectBounds oldBounds = e.getBounds();
-                ((Bullet) e).move();
-                MapElement collision = collides(e);
-                if (collision != null){
-                    elements.remove(e);
-                    moveToNextElement = false;
-                    System.out.println("bullet collision");
-                    // if the bullet hits a player, have the player react and possibly die
-                    if (collision.getClass() == StarStonePlayer.class){
-                        StarStonePlayer p = (StarStonePlayer) collision;
-                        p.onCollide((Bullet)e);
-                        redrawBackground(p.getBounds());
-                    }
-                    // if the bullet hits another bullet, have both bullets disappear
-                    else if (collision.getClass() == Bullet.class){
-                        elements.remove(collision);
-                        // draw over the second bullet
-                        if (!server){
-                            redrawBackground(collision.getBounds());
-                        }
-                    }
+        // remember where the players are for this update, for shots from players who are behind
+        tick++;
+        history.record(tick, players);
+        // add and remove everything waiting since the last update, nothing is added or removed during the update
+        entities.compact();
+        entities.addSpawned();
+        bullets.addSpawned();
+        // keep the paths toward the players up to date, a little at a time. Only the server moves anything along them
+        if (server){
+            pathfinding.update(players);
+        }
+        // find what each bullet first runs into along its path, before any bullet has moved. Nothing changes while
+        // the bullets are swept, so large numbers of bullets are split between threads
+        takeSnapshot();
+        bullets.buildGrid();
+        runBulletTask(false);
+        // the rest of the update happens on this thread, in an order that does not depend on the threads
+        int numHits = 0;
+        for (int i = 0; i < bullets.getCount(); i++){
+            if (bullets.getHitType(i) != BulletStore.HIT_NOTHING){
+                // times are never negative, so their bits sort in the same order as the times
+                hitOrder[numHits] = ((long) Float.floatToIntBits(bullets.getHitTime(i)) << 32) | i;
+                numHits++;
+            }
+        }
+        // resolve the hits in the order they happen along the paths so the earliest hit wins
+        Arrays.sort(hitOrder, 0, numHits);
+        for (int h = 0; h < numHits; h++){
+            int i = (int) hitOrder[h];
+            if (bullets.isDead(i)){
+                continue;
+            }
+            // the bullet or player it was heading for is already gone, so look again at only the walls and players
+            int hit = bullets.getHitIndex(i);
+            if ((bullets.getHitType(i) == BulletStore.HIT_BULLET && bullets.isDead(hit))
+                    || (bullets.getHitType(i) == BulletStore.HIT_PLAYER && playerHullSnapshot[hit] == null)){
+                sweepBullet(i, false);
+                if (bullets.getHitType(i) == BulletStore.HIT_NOTHING){
+                    continue;
                 }
-                else {
-                    if (!server) {
-                        drawElement(e);
-                    }
+                hit = bullets.getHitIndex(i);
+            }
+            bullets.kill(i);
+            Log.debug("bullet collision");
+            if (!server){
+                markBulletDirty(i);
+            }
+            // if the bullet hits an element with health, damage it and draw over it if it is destroyed
+            if (bullets.getHitType(i) == BulletStore.HIT_ELEMENT){
+                entities.damage(hit, bullets.getDamage(i));
+                if (!server && entities.isDead(hit)){
+                    markEntityDirty(hit);
                 }
-                if (!server) {
-                    redrawBackground(oldBounds);
+            }
+            // if the bullet hits a player, have the player react and possibly die
+            else if (bullets.getHitType(i) == BulletStore.HIT_PLAYER){
+                StarStonePlayer p = players.get(hit);
+                p.onCollide(bullets.getDamage(i));
+                // later bullets can not hit a player that has died
+                if (!p.isActive()){
+                    playerHullSnapshot[hit] = null;
+                }
+                if (!server){
+                    markDirty(p);
                 }
             }
-            if (moveToNextElement) {
-                index++;
+            // if the bullet hits another bullet, have both bullets disappear
+            else if (bullets.getHitType(i) == BulletStore.HIT_BULLET){
+                bullets.kill(hit);
+                // draw over the second bullet
+                if (!server){
+                    markBulletDirty(hit);
+                }
             }
         }
+        // remove the bullets that hit something in one pass
+        bullets.compact();
+        // move the bullets that did not hit anything, bullets that are drawn must be moved on this thread
+        if (server){
+            runBulletTask(true);
+            entities.move();
+            return;
+        }
+        for (int i = 0; i < bullets.getCount(); i++){
+            markBulletDirty(i);
+            bullets.move(i);
+            markBulletDirty(i);
+        }
+        moveEntities();
     }
 
     /**
-     * Draws the background over the old bounds, then draws any overlapping players and objects
-     * @param oldBounds the bounds of the area on which to draw the background and overlapping players and objects
+     * Moves the entities that have a velocity, marking where they were and where they are now to be drawn
      */
-    private void redrawBackground(final RectBounds oldBounds){
-        Rectangle oldRect = oldBounds.getRedrawRect();
-        // get the background
-        BufferedImage background = getWrappedImage(backgroundMap, oldRect.x, oldRect.y, oldRect.width, oldRect.height);
-        // draw the background on the full map
-        drawWrappedImage(fullMap, background, oldRect.x, oldRect.y, 0, new Point(0,0));
-        // also draw intersecting elements and players to make sure players are not overdrawn with background
-        for (int i = 0; i < elements.size(); i++){
-            if (RectBounds.drawRectIntersects(elements.get(i).getBounds(), oldBounds)){
-                drawElement(elements.get(i));
-                // draw players that are intersecting this element so the players always appear on top
-                for (int j = 0; j < players.size(); j++){
-                    if (players.get(j).isActive() && RectBounds.drawRectIntersects(players.get(j).getBounds(), elements.get(i).getBounds())){
-                        drawElement(players.get(j));
-                    }
-                }
+    private void moveEntities(){
+        for (int i = 0; i < entities.getCount(); i++){
+            if (entities.has(i, EntityStore.POSITION | EntityStore.VELOCITY) && !entities.isDead(i)){
+                markEntityDirty(i);
+                entities.move(i);
+                markEntityDirty(i);
             }
         }
+    }
+
+    /**
+     * Copies the hulls of the active players, so bullets can be swept on other threads without looking at the players.
+     * Entities do not change while bullets are swept, so they are read directly
+     */
+    private void takeSnapshot(){
+        if (playerHullSnapshot.length != players.size()){
+            playerHullSnapshot = new Bounds[players.size()];
+        }
         for (int i = 0; i < players.size(); i++){
-            if (players.get(i).isActive() && RectBounds.drawRectIntersects(players.get(i).getBounds(), oldBounds)){
-                drawElement(players.get(i));
+            playerHullSnapshot[i] = players.get(i).isActive() ? players.get(i).getHull() : null;
+        }
+    }
+
+    /**
+     * Sweeps or moves every bullet, using the fork/join pool when there are enough bullets to be worth splitting
+     * @param move true to move the bullets, false to sweep them
+     */
+    private void runBulletTask(final boolean move){
+        BulletTask task = new BulletTask(0, bullets.getCount(), move);
+        if (bullets.getCount() >= PARALLEL_BULLETS){
+            ForkJoinPool.commonPool().invoke(task);
+        }
+        else {
+            task.compute();
+        }
+    }
+
+    /**
+     * Sweeps or moves a range of bullets, splitting the range into halves until it is small enough for one thread.
+     * Each bullet only writes its own values, so the order the ranges finish in does not matter
+     */
+    private class BulletTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int start;
+        private final int end;
+        private final boolean move;
+
+        /**
+         * @param start index of the first bullet in the range
+         * @param end index after the last bullet in the range
+         * @param move true to move the bullets, false to sweep them
+         */
+        public BulletTask(final int start, final int end, final boolean move){
+            this.start = start;
+            this.end = end;
+            this.move = move;
+        }
+
+        @Override
+        protected void compute(){
+            if (end - start > PARALLEL_BATCH){
+                int middle = (start + end) >>> 1;
+                invokeAll(new BulletTask(start, middle, move), new BulletTask(middle, end, move));
+                return;
+            }
+            for (int i = start; i < end; i++){
+                if (move){
+                    bullets.move(i);
+                }
+                else {
+                    sweepBullet(i, true);
+                }
             }
         }
+    }
 
+    /**
+     * Finds the first thing a bullet runs into along the path of its next move and stores it in the bullet store.
+     * Everything is checked where it is before the move, and other bullets are checked moving along with it, so
+     * bullets can not skip past thin walls or each other between updates. Only the snapshot of the players and
+     * the entities, which do not change during the sweep, are used, so bullets can be swept on any thread
+     * @param index the index of the bullet to check the path of
+     * @param includeBullets whether or not other bullets should be checked
+     */
+    private void sweepBullet(final int index, final boolean includeBullets){
+        int type = BulletStore.HIT_NOTHING;
+        int hit = -1;
+        float first = RectBounds.NO_HIT;
+        float x = bullets.getX(index);
+        float y = bullets.getY(index);
+        float dx = bullets.getDx(index);
+        float dy = bullets.getDy(index);
+        int owner = bullets.getOwner(index);
+        // players are checked against the rotated box around their image rather than their square
+        for (int i = 0; i < playerHullSnapshot.length; i++){
+            if (playerHullSnapshot[i] != null){
+                // a new bullet starts inside the box of the player that shot it, and can only hit them once it is out
+                if (i == owner && playerHullSnapshot[i].sweep(x, y, 0, 0, BulletStore.WIDTH) != RectBounds.NO_HIT){
+                    continue;
+                }
+                float t = playerHullSnapshot[i].sweep(x, y, dx, dy, BulletStore.WIDTH);
+                if (t < first){
+                    first = t;
+                    type = BulletStore.HIT_PLAYER;
+                    hit = i;
+                }
+            }
+        }
+        for (int i = 0; i < entities.getCount(); i++){
+            if (!entities.has(i, EntityStore.BOUNDS)){
+                continue;
+            }
+            float t = RectBounds.sweepRect(x, y, dx, dy, BulletStore.WIDTH,
+                    (int) entities.getX(i), (int) entities.getY(i), entities.getWidth(i), entities.getHeight(i));
+            if (t < first){
+                first = t;
+                type = BulletStore.HIT_ELEMENT;
+                hit = i;
+            }
+        }
+        bullets.setHit(index, type, hit, first);
+        if (includeBullets){
+            bullets.sweepBullets(index);
+        }
     }
 
     /**
-     * Detects current collisions in the map for the given element
-     * @param element the element to check collisions for
-     * @return the element that collides, null if nothing collides
+     * Marks the area of the map a player is drawn over, including its health bar, as changed
+     * @param p the player to mark
      */
-    private MapElement collides(MapElement element){
-        // collisions between other players
+    private void markDirty(final StarStonePlayer p){
+        findPlayerArea(p);
+        markDirty(playerArea.x, playerArea.y, playerArea.width, playerArea.height);
+    }
+
+    /**
+     * Finds the area of the map a player is drawn over, including its health bar, and stores it in playerArea
+     * @param p the player to find the area of
+     */
+    private void findPlayerArea(final StarStonePlayer p){
+        Point location = p.getTopLeft();
+        RectBounds bounds = p.getBounds();
+        Point shootLocation = p.getShootLocation();
+        // the outlines of the bounds are drawn one pixel past their width and height
+        int left = Math.min(bounds.getRedrawX(), shootLocation.x);
+        int top = Math.min(Math.min(bounds.getRedrawY(), shootLocation.y), location.y - PLAYER_HEALTH_BAR_OFFSET);
+        int right = Math.max(bounds.getRedrawX() + bounds.getRedrawWidth() + 1, shootLocation.x + BulletStore.WIDTH);
+        int bottom = Math.max(bounds.getRedrawY() + bounds.getRedrawHeight() + 1, shootLocation.y + BulletStore.WIDTH);
+        right = Math.max(right, location.x + p.getHealthBarImage().getWidth());
+        SpriteCache sprites = p.getSprites();
+        if (sprites != null){
+            left = Math.min(left, location.x + sprites.getOffsetX());
+            top = Math.min(top, location.y + sprites.getOffsetY());
+            right = Math.max(right, location.x + sprites.getOffsetX() + sprites.getFrameSize());
+            bottom = Math.max(bottom, location.y + sprites.getOffsetY() + sprites.getFrameSize());
+        }
+        playerArea.setBounds(left, top, right - left, bottom - top);
+    }
+
+    /**
+     * Marks the area of the map around the bullet as changed
+     * @param index the index of the bullet to mark
+     */
+    private void markBulletDirty(final int index){
+        int x = (int) bullets.getX(index);
+        int y = (int) bullets.getY(index);
+        markDirty(x - BulletStore.WIDTH, y - BulletStore.WIDTH, BULLET_REDRAW_WIDTH + 1, BULLET_REDRAW_WIDTH + 1);
+    }
+
+    /**
+     * Marks the area of the map the entity is drawn over as changed
+     * @param index the index of the entity to mark
+     */
+    private void markEntityDirty(final int index){
+        if (entities.has(index, EntityStore.POSITION | EntityStore.SPRITE)){
+            markDirty((int) entities.getX(index), (int) entities.getY(index), getEntityDrawWidth(index), getEntityDrawHeight(index));
+        }
+    }
+
+    /**
+     * Marks an area of the map as changed, it is drawn the next time the map is shown
+     * @param x x coordinate of the area, may be outside the map
+     * @param y y coordinate of the area, may be outside the map
+     * @param width width of the area
+     * @param height height of the area
+     */
+    private void markDirty(final int x, final int y, final int width, final int height){
+        dirtyRegions.add(x, y, width, height);
+    }
+
+    /**
+     * Draws each changed area once in the tiles that are kept, tiles that are not kept are drawn in full when they
+     * are next shown. The grids used to find what to draw are only made again when something has changed
+     */
+    private void drawDirtyRegions(){
+        if (dirtyRegions.getCount() == 0){
+            return;
+        }
+        // the entities only need to be placed in their grid again when they have changed
+        if (entityGridVersion != entities.getVersion()){
+            entityGrid.clear();
+            for (int i = 0; i < entities.getCount(); i++){
+                if (entities.has(i, EntityStore.POSITION | EntityStore.SPRITE)){
+                    entityGrid.insert(i, (int) entities.getX(i), (int) entities.getY(i), getEntityDrawWidth(i), getEntityDrawHeight(i));
+                }
+            }
+            entityGridVersion = entities.getVersion();
+        }
+        bulletGrid.clear();
+        for (int i = 0; i < bullets.getCount(); i++){
+            bulletGrid.insert(i, (int) bullets.getX(i) - BulletStore.WIDTH, (int) bullets.getY(i) - BulletStore.WIDTH,
+                    BULLET_REDRAW_WIDTH + 1, BULLET_REDRAW_WIDTH + 1);
+        }
+        for (int r = 0; r < dirtyRegions.getCount(); r++){
+            tiles.redraw(dirtyRegions.getX(r), dirtyRegions.getY(r), dirtyRegions.getWidth(r), dirtyRegions.getHeight(r));
+        }
+        dirtyRegions.clear();
+    }
+
+    /**
+     * Draws an area of the map from the background and only the entities, bullets, and players found in the area.
+     * The area is clipped so nothing outside of it is drawn over
+     * @param g the graphics to draw with, in map coordinates
+     * @param x x coordinate of the area, inside the map
+     * @param y y coordinate of the area, inside the map
+     * @param width width of the area
+     * @param height height of the area
+     */
+    private void drawArea(final Graphics2D g, final int x, final int y, final int width, final int height){
+        g.setClip(x, y, width, height);
+        // the background image repeats from the top left of the map, so start at the copy the area begins in
+        int imageWidth = backgroundImage.getWidth();
+        int imageHeight = backgroundImage.getHeight();
+        for (int imageY = y - y % imageHeight; imageY < y + height; imageY += imageHeight){
+            for (int imageX = x - x % imageWidth; imageX < x + width; imageX += imageWidth){
+                g.drawImage(backgroundImage, imageX, imageY, null);
+            }
+        }
+        if (debugDrawn){
+            g.setColor(Color.RED);
+            g.drawRect(0, 0, WIDTH, HEIGHT);
+        }
+        // draw the entities, then the bullets, then the players on top
+        int numFound = entityGrid.query(x, y, width, height, found);
+        for (int i = 0; i < numFound; i++){
+            if (!entities.isDead(found[i])){
+                drawEntity(g, found[i]);
+            }
+        }
+        numFound = bulletGrid.query(x, y, width, height, found);
+        for (int i = 0; i < numFound; i++){
+            drawBullet(g, found[i]);
+        }
         for (StarStonePlayer p : players){
-            if (p.isActive() && p != element && RectBounds.boundsIntersect(element.getBounds(), p.getBounds())){
-                System.out.println("Collision with player at index " + players.indexOf(p));
-                return p;
+            if (p.isActive()){
+                findPlayerArea(p);
+                if (RectBounds.rectsIntersect(playerArea.x, playerArea.y, playerArea.width, playerArea.height, x, y, width, height)){
+                    drawPlayer(g, p);
+                }
+            }
+        }
+    }
+
+    private int getEntityDrawWidth(final int index){return Math.max(entities.getSpriteImage(index).getWidth(), entities.getWidth(index) + 1);}
+    private int getEntityDrawHeight(final int index){return Math.max(entities.getSpriteImage(index).getHeight(), entities.getHeight(index) + 1);}
+
+    /**
+     * Detects current collisions in the map for the given player
+     * @param player the player to check collisions for
+     * @return whether or not the player collides with another player or an element
+     */
+    private boolean collides(final StarStonePlayer player){
+        // collisions between other players
+        for (int i = 0; i < players.size(); i++){
+            StarStonePlayer p = players.get(i);
+            if (p.isActive() && p != player && RectBounds.boundsIntersect(player.getBounds(), p.getBounds())){
+                Log.debug("Collision with player at index %d", i);
+                return true;
             }
         }
         // collisions between other game elements
-        for (MapElement e : elements){
-            if (e != element && RectBounds.boundsIntersect(e.getBounds(), element.getBounds())){
-                return e;
+        return entities.intersects(player.getBounds()) != -1;
+    }
+
+    /**
+     * Casts a ray through the map, finding the first wall or player it runs into. Walls are found by walking through
+     * the cells of the layout grid the ray crosses, and the ray wraps around the sides of the map
+     * @param x x coordinate of the start of the ray
+     * @param y y coordinate of the start of the ray
+     * @param angle the angle, in radians, of the ray
+     * @param maxDistance the length of the ray
+     * @param ignorePlayer the index of a player the ray can not hit, such as the player shooting, -1 to check all
+     * @param hit filled in with what the ray runs into first
+     * @return whether or not the ray runs into anything
+     */
+    public boolean raycast(final float x, final float y, final double angle, final float maxDistance,
+                           final int ignorePlayer, final RayHit hit){
+        float dirX = (float) Math.cos(angle);
+        float dirY = (float) Math.sin(angle);
+        float wallDistance = castToWall(x, y, dirX, dirY, maxDistance);
+        float limit = Math.min(wallDistance, maxDistance);
+
+        // check the players along the ray, one piece of the ray at a time between the sides of the map
+        int playerHit = -1;
+        float playerDistance = RectBounds.NO_HIT;
+        float startX = x;
+        float startY = y;
+        float travelled = 0;
+        while (travelled < limit && playerHit == -1){
+            // wrap the start of this piece into the map, based on which way the ray is going
+            while (dirX > 0 ? startX >= WIDTH : startX < 0 || (dirX < 0 && startX == 0)){
+                startX += dirX > 0 ? -WIDTH : WIDTH;
+            }
+            while (dirY > 0 ? startY >= HEIGHT : startY < 0 || (dirY < 0 && startY == 0)){
+                startY += dirY > 0 ? -HEIGHT : HEIGHT;
+            }
+            float exitX = dirX > 0 ? (WIDTH - startX) / dirX : dirX < 0 ? -startX / dirX : RectBounds.NO_HIT;
+            float exitY = dirY > 0 ? (HEIGHT - startY) / dirY : dirY < 0 ? -startY / dirY : RectBounds.NO_HIT;
+            float length = Math.min(limit - travelled, Math.min(exitX, exitY));
+            for (int i = 0; i < players.size(); i++){
+                StarStonePlayer p = players.get(i);
+                if (i != ignorePlayer && p.isActive()){
+                    float t = p.getHull().sweep(startX, startY, dirX * length, dirY * length, 0);
+                    if (t != RectBounds.NO_HIT && travelled + t * length < playerDistance){
+                        playerDistance = travelled + t * length;
+                        playerHit = i;
+                    }
+                }
             }
+            startX += dirX * length;
+            startY += dirY * length;
+            travelled += length;
         }
-        return null;
+
+        if (playerHit != -1){
+            hit.set(RayHit.PLAYER, playerHit, playerDistance, wrap(x + dirX * playerDistance, WIDTH), wrap(y + dirY * playerDistance, HEIGHT));
+            return true;
+        }
+        if (wallDistance <= maxDistance){
+            hit.set(RayHit.WALL, -1, wallDistance, wrap(x + dirX * wallDistance, WIDTH), wrap(y + dirY * wallDistance, HEIGHT));
+            return true;
+        }
+        hit.set(RayHit.NOTHING, -1, maxDistance, wrap(x + dirX * maxDistance, WIDTH), wrap(y + dirY * maxDistance, HEIGHT));
+        return false;
     }
 
     /**
-     * Draws each of the players on the map
+     * If there are no walls on the straight line between two points
+     * @param x1 x coordinate of the first point
+     * @param y1 y coordinate of the first point
+     * @param x2 x coordinate of the second point
+     * @param y2 y coordinate of the second point
+     * @return whether or not the second point can be seen from the first point
      */
-    private void drawPlayers(){
-        for (StarStonePlayer p : players){
-            if (p.isActive()) {
-                drawElement(p);
+    public boolean hasLineOfSight(final float x1, final float y1, final float x2, final float y2){
+        float distance = (float) Math.hypot(x2 - x1, y2 - y1);
+        if (distance == 0){
+            return castToWall(x1, y1, 1, 0, 0) > 0;
+        }
+        return castToWall(x1, y1, (x2 - x1) / distance, (y2 - y1) / distance, distance) > distance;
+    }
+
+    /**
+     * Walks through the cells of the layout grid the ray crosses until reaching a wall cell
+     * @param x x coordinate of the start of the ray
+     * @param y y coordinate of the start of the ray
+     * @param dirX x component of the direction of the ray, the direction must have a length of one
+     * @param dirY y component of the direction of the ray
+     * @param maxDistance how far to walk before stopping
+     * @return how far along the ray the first wall cell starts, NO_HIT if there is none within the distance
+     */
+    private float castToWall(final float x, final float y, final float dirX, final float dirY, final float maxDistance){
+        int scale = layout.getScale();
+        int column = (int) Math.floor(x / scale);
+        int row = (int) Math.floor(y / scale);
+        int stepX = dirX > 0 ? 1 : -1;
+        int stepY = dirY > 0 ? 1 : -1;
+        // distance along the ray to cross one whole cell, and to reach the next cell, in each direction
+        float crossX = dirX == 0 ? RectBounds.NO_HIT : Math.abs(scale / dirX);
+        float crossY = dirY == 0 ? RectBounds.NO_HIT : Math.abs(scale / dirY);
+        float nextX = dirX > 0 ? ((column + 1) * scale - x) / dirX : dirX < 0 ? (column * scale - x) / dirX : RectBounds.NO_HIT;
+        float nextY = dirY > 0 ? ((row + 1) * scale - y) / dirY : dirY < 0 ? (row * scale - y) / dirY : RectBounds.NO_HIT;
+        float distance = 0;
+        while (distance <= maxDistance){
+            if (layout.isWall(column, row)){
+                return distance;
+            }
+            if (nextX < nextY){
+                distance = nextX;
+                nextX += crossX;
+                column += stepX;
+            }
+            else {
+                distance = nextY;
+                nextY += crossY;
+                row += stepY;
             }
         }
+        return RectBounds.NO_HIT;
     }
 
     /**
-     * Draws the given element on the map
-     * @param e the element to draw
+     * Wraps a coordinate into the map
+     * @param value the coordinate to wrap
+     * @param size the width or height of the map
+     * @return the coordinate moved by the size until it is at least 0 and less than the size
      */
-    private void drawElement(final MapElement e){
-        Point location = e.getTopLeft();
-        drawWrappedImage(fullMap, e.getImage(), location.x, location.y, e.getAngle(), e.getAnchor());
-        Graphics2D g = fullMap.createGraphics();
-        g.setColor(Color.RED);
-        Rectangle playerRect = e.getBounds().getRedrawRect();
-        g.drawRect(playerRect.x, playerRect.y, playerRect.width, playerRect.height);
-        g.setColor(Color.GREEN);
-        Rectangle boundRect = e.getBounds().getBoundingRects().get(0);
-        g.drawRect(boundRect.x, boundRect.y, boundRect.width, boundRect.height);
-  //      ArrayList<Line2D.Float> playerBounds = e.getBounds().getPolygon();
- //       for (Line2D.Float line : playerBounds){
- //           g.drawLine((int)line.x1, (int)line.y1, (int)line.x2, (int)line.y2);
- //       }
-        if (e.getClass() == StarStonePlayer.class){
-            // draw the health bar
-            drawWrappedImage(fullMap, ((StarStonePlayer) e).getHealthBarImage(), location.x, location.y - PLAYER_HEALTH_BAR_OFFSET, 0, new Point(0,0));
+    private static float wrap(final float value, final int size){
+        float wrapped = value % size;
+        return wrapped < 0 ? wrapped + size : wrapped;
+    }
+
+    /**
+     * Shows or hides the debug shapes drawn over the elements, drawing the whole map again if it changes
+     * @param debugDrawn whether or not the bounds, redraw areas and shoot locations are drawn
+     */
+    public void setDebugDrawn(final boolean debugDrawn){
+        if (this.debugDrawn != debugDrawn){
+            this.debugDrawn = debugDrawn;
+            markDirty(0, 0, WIDTH, HEIGHT);
+        }
+    }
 
+    public Pathfinding getPathfinding(){return pathfinding;}
+    public int getTick(){return tick;}
+    public int getEntityCount(){return entities.getCount();}
+    public int getBulletCount(){return bullets.getCount();}
+    public int getPlayerCount(){return players.size();}
 
+    /**
+     * Draws the given player and its health bar on the map
+     * @param g the graphics to draw with, in map coordinates
+     * @param p the player to draw
+     */
+    private void drawPlayer(final Graphics g, final StarStonePlayer p){
+        Point location = p.getTopLeft();
+        // draw the image already rotated to the nearest angle, so no rotating is done while drawing
+        SpriteCache sprites = p.getSprites();
+        if (sprites != null){
+            drawWrappedImage(g, sprites.getFrame(p.getAngle()), location.x + sprites.getOffsetX(), location.y + sprites.getOffsetY());
+        }
+        // draw the health bar
+        drawWrappedImage(g, p.getHealthBarImage(), location.x, location.y - PLAYER_HEALTH_BAR_OFFSET);
+        if (debugDrawn){
+            g.setColor(Color.RED);
+            RectBounds bounds = p.getBounds();
+            g.drawRect(bounds.getRedrawX(), bounds.getRedrawY(), bounds.getRedrawWidth(), bounds.getRedrawHeight());
+            g.setColor(Color.GREEN);
+            g.drawRect(bounds.getBoundX(0), bounds.getBoundY(0), bounds.getBoundWidth(0), bounds.getBoundHeight(0));
             g.setColor(Color.BLUE);
-            g.fillRect(((StarStonePlayer)e).getShootLocation().x, ((StarStonePlayer)e).getShootLocation().y, Bullet.WIDTH, Bullet.WIDTH);
+            g.fillRect(p.getShootLocation().x, p.getShootLocation().y, BulletStore.WIDTH, BulletStore.WIDTH);
+        }
+    }
+
+    /**
+     * Draws the entity at the given index on the map, if it has a sprite
+     * @param g the graphics to draw with, in map coordinates
+     * @param index the index of the entity to draw
+     */
+    private void drawEntity(final Graphics g, final int index){
+        if (!entities.has(index, EntityStore.POSITION | EntityStore.SPRITE)){
+            return;
+        }
+        int x = (int) entities.getX(index);
+        int y = (int) entities.getY(index);
+        drawWrappedImage(g, entities.getSpriteImage(index), x, y);
+        if (debugDrawn && entities.has(index, EntityStore.BOUNDS)){
+            g.setColor(Color.GREEN);
+            g.drawRect(x, y, entities.getWidth(index), entities.getHeight(index));
         }
     }
 
     /**
-     * Returns what should be shown to the given player.
+     * Draws the bullet at the given index on the map
+     * @param g the graphics to draw with, in map coordinates
+     * @param index the index of the bullet to draw
+     */
+    private void drawBullet(final Graphics g, final int index){
+        int x = (int) bullets.getX(index);
+        int y = (int) bullets.getY(index);
+        drawWrappedImage(g, BulletStore.getImage(), x, y);
+        if (debugDrawn){
+            g.setColor(Color.RED);
+            g.drawRect(x - BulletStore.WIDTH, y - BulletStore.WIDTH, BULLET_REDRAW_WIDTH, BULLET_REDRAW_WIDTH);
+            g.setColor(Color.GREEN);
+            g.drawRect(x, y, BulletStore.WIDTH, BulletStore.WIDTH);
+        }
+    }
+
+    /**
+     * Draws what should be shown to the given player, copying straight from the tiles of the map. The areas of the
+     * map that changed since it was last shown are drawn first, and tiles coming into view are drawn as they are needed.
      * Player must be one of the players given when the map was made
-     * @return what the player should view of the map
-     */
-    public BufferedImage getPlayerView(final StarStonePlayer p){
-        Rectangle playerRect = p.getBounds().getRedrawRect();
-        int viewX = (playerRect.x + (playerRect.width / 2) - (VIEW_WIDTH / 2) + WIDTH) % WIDTH;
-        int viewY = (playerRect.y + (playerRect.height / 2) - (VIEW_HEIGHT / 2) + HEIGHT) % HEIGHT;
-        return getWrappedImage(fullMap, viewX, viewY, VIEW_WIDTH, VIEW_HEIGHT);
-    }
-
-
-    /**
-     * The subimage of the image given by a rectangle, the subimage wraps around the original image
-     * @param image the image to take the subimage from
-     * @param x x coordinate of the subimage
-     * @param y y coordinate of the subimage
-     * @param width width of the subimage
-     * @param height height of the subimage
-     * @return the subimage of image given by the rectangle
-     */
-    private static BufferedImage getWrappedImage(final BufferedImage image, int x, int y, final int width, final int height){
-        int imageWidth = image.getWidth();
-        int imageHeight = image.getHeight();
-        // make sure x and y are within the image
-        while (x < 0){
-            x += imageWidth;
-        }
-        while (y < 0){
-            y += imageHeight;
-        }
-        x %= imageWidth;
-        y %= imageHeight;
-
-        // find amounts to wrap or not wrap
-        int nonWrapX = imageWidth - x;
-        int nonWrapY = imageHeight - y;
-        int wrapX = width - nonWrapX;
-        int wrapY = height - nonWrapY;
-        // check if the image can be drawn normally in a direction
-        if (wrapX <= 0){
-            wrapX = 0;
-            nonWrapX = width;
-        }
-        if (wrapY <= 0){
-            wrapY = 0;
-            nonWrapY = height;
-        }
-
-        BufferedImage subimage = new BufferedImage(width, height, IMAGE_TYPE);
-        Graphics g = subimage.getGraphics();
-        // set the top left of the image
-        g.drawImage(image.getSubimage(x,y,nonWrapX, nonWrapY),0,0, null);
-        // draw the left-right overlap of the image
-        if (wrapX > 0) {
-            g.drawImage(image.getSubimage(0, y, wrapX, nonWrapY), nonWrapX, 0, null);
-        }
-        // draw the top-bottom overlap of the image
-        if (wrapY > 0) {
-            g.drawImage(image.getSubimage(x, 0, nonWrapX, wrapY), 0, nonWrapY, null);
-        }
-        // draw where both overlap
-        if (wrapX > 0 && wrapY > 0){
-            g.drawImage(image.getSubimage(0,0,wrapX, wrapY), nonWrapX, nonWrapY, null);
-        }
-
-        return subimage;
-    }
-
-    /**
-     * Draws an image on top of part of another image, wrapping the first image around x and y directions as necessary.
-     * The canvas image is modified in-place
-     * @param canvas the image that will be drawn over
-     * @param toDraw the image to draw on top of the other image
-     * @param x the x coordinate of the image to draw
-     * @param y the y coordinate of the image to draw
-     * @param angle the angle, in radians, at which to draw toDraw
-     * @param anchor the distance from x and y to rotate the image around
-     */
-    private static void drawWrappedImage(final BufferedImage canvas, final BufferedImage toDraw, int x, int y, double angle, Point anchor){
-        int canvasWidth = canvas.getWidth();
-        int canvasHeight = canvas.getHeight();
-        //int imageWidth = toDraw.getWidth();
-        //int imageHeight = toDraw.getHeight();
-        int maxDimension = Math.max(toDraw.getWidth(), toDraw.getHeight());
-        // ensure x and y are in the correct range
-        while (x < 0){
-            x += canvasWidth;
-        }
-        while (y < 0){
-            y += canvasHeight;
-        }
-        x %= canvasWidth;
-        y %= canvasHeight;
-
-        // draw the image normally
-        Graphics2D g = (Graphics2D) canvas.getGraphics();
-        AffineTransform at = new AffineTransform();
-        at.rotate(angle, x + anchor.x, y + anchor.y);
-        g.setTransform(at);
-        g.drawImage(toDraw,x,y, null);
-
-        // if need to draw the image again by shifting the image to the right
-        if (x - maxDimension < 0){
-            at = new AffineTransform();
-            at.rotate(angle, x + anchor.x + canvasWidth, y + anchor.y);
-            g.setTransform(at);
-            g.drawImage(toDraw, x + canvasWidth, y, null);
-        }
-        // if need to draw the image again by shifting the image to the left
-        if (x + maxDimension >= canvasWidth){
-            at = new AffineTransform();
-            at.rotate(angle, x + anchor.x - canvasWidth, y + anchor.y);
-            g.setTransform(at);
-            g.drawImage(toDraw, x - canvasWidth, y, null);
-        }
-        // if need to draw the image again by shifting the image down
-        if (y - maxDimension < 0){
-            at = new AffineTransform();
-            at.rotate(angle, x + anchor.x, y + anchor.y + canvasHeight);
-            g.setTransform(at);
-            g.drawImage(toDraw, x, y + canvasHeight, null);
-        }
-        // if need to draw the image again by shifting the image up
-        if (y + maxDimension >= canvasHeight){
-            at = new AffineTransform();
-            at.rotate(angle, x + anchor.x, y + anchor.y - canvasHeight);
-            g.setTransform(at);
-            g.drawImage(toDraw, x, y - canvasHeight, null);
-        }
-        // if need to draw the image again by shifting the image down and right
-        if (y - maxDimension < 0 && x - maxDimension < 0){
-            at = new AffineTransform();
-            at.rotate(angle, x + anchor.x + canvasWidth, y + anchor.y + canvasHeight);
-            g.setTransform(at);
-            g.drawImage(toDraw, x + canvasWidth, y + canvasHeight, null);
-        }
-        // if need to draw the image again by shifting the image up and left
-        if (y + maxDimension >= canvasHeight && x + maxDimension >= canvasWidth){
-            at = new AffineTransform();
-            at.rotate(angle, x + anchor.x - canvasWidth, y + anchor.y - canvasHeight);
-            g.setTransform(at);
-            g.drawImage(toDraw, x - canvasWidth, y - canvasHeight, null);
-        }
-        // if need to draw the image again by shifting the image down and left
-        if (y - maxDimension < 0 && x + maxDimension >= canvasWidth){
-            at = new AffineTransform();
-            at.rotate(angle, x + anchor.x - canvasWidth, y + anchor.y + canvasHeight);
-            g.setTransform(at);
-            g.drawImage(toDraw, x - canvasWidth, y + canvasHeight, null);
-        }
-        // if need to draw the image again by shifting the image up and right
-        if (y + maxDimension >= canvasHeight && x - maxDimension < 0){
-            at = new AffineTransform();
-            at.rotate(angle, x + anchor.x + canvasWidth, y + anchor.y - canvasHeight);
-            g.setTransform(at);
-            g.drawImage(toDraw, x + canvasWidth, y - canvasHeight, null);
+     * @param p the player to draw the view for
+     * @param g the graphics to draw the view on, at its top left, VIEW_WIDTH by VIEW_HEIGHT
+     */
+    public void drawPlayerView(final StarStonePlayer p, final Graphics g){
+        drawDirtyRegions();
+        RectBounds playerBounds = p.getBounds();
+        int viewX = (playerBounds.getRedrawX() + (playerBounds.getRedrawWidth() / 2) - (VIEW_WIDTH / 2) + WIDTH) % WIDTH;
+        int viewY = (playerBounds.getRedrawY() + (playerBounds.getRedrawHeight() / 2) - (VIEW_HEIGHT / 2) + HEIGHT) % HEIGHT;
+        tiles.draw(g, viewX, viewY, VIEW_WIDTH, VIEW_HEIGHT);
+    }
+
+
+    /**
+     * Draws an image on the map without rotating it, also drawing it shifted across the sides of the map it
+     * hangs over. Only the part of each copy inside the clip of the graphics is copied, and copies outside the clip
+     * are skipped, so an image is never drawn where it will not be seen
+     * @param g the graphics to draw with, in map coordinates, clipped to the area being drawn
+     * @param toDraw the image to draw on top of the map
+     * @param x the x coordinate of the image to draw, may be outside the map
+     * @param y the y coordinate of the image to draw, may be outside the map
+     */
+    private void drawWrappedImage(final Graphics g, final BufferedImage toDraw, int x, int y){
+        x = Math.floorMod(x, WIDTH);
+        y = Math.floorMod(y, HEIGHT);
+        g.getClipBounds(clipArea);
+        // the image starts inside the map, so it can only hang over the right and bottom sides
+        boolean wrapX = x + toDraw.getWidth() > WIDTH;
+        boolean wrapY = y + toDraw.getHeight() > HEIGHT;
+        drawClipped(g, toDraw, x, y);
+        if (wrapX){
+            drawClipped(g, toDraw, x - WIDTH, y);
+        }
+        if (wrapY){
+            drawClipped(g, toDraw, x, y - HEIGHT);
+        }
+        if (wrapX && wrapY){
+            drawClipped(g, toDraw, x - WIDTH, y - HEIGHT);
         }
+    }
 
+    /**
+     * Copies the part of an image inside the clip area found by drawWrappedImage, nothing is drawn if the image is
+     * outside of it
+     * @param g the graphics to draw with
+     * @param toDraw the image to copy from
+     * @param x the x coordinate of the top left of the image
+     * @param y the y coordinate of the top left of the image
+     */
+    private void drawClipped(final Graphics g, final BufferedImage toDraw, final int x, final int y){
+        int left = Math.max(x, clipArea.x);
+        int top = Math.max(y, clipArea.y);
+        int right = Math.min(x + toDraw.getWidth(), clipArea.x + clipArea.width);
+        int bottom = Math.min(y + toDraw.getHeight(), clipArea.y + clipArea.height);
+        if (left < right && top < bottom){
+            g.drawImage(toDraw, left, top, right, bottom, left - x, top - y, right - x, bottom - y, null);
+        }
     }
 
 }
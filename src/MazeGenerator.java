@@ -0,0 +1,156 @@
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Makes maze layouts from a seed. The same seed always makes the same maze, so the server only has to send the seed
+ * for every client to build the same map. Rooms sit on the even cells of the grid with walls between them, and the
+ * maze wraps around the sides of the map like the map itself. The maze is carved with an iterative recursive
+ * backtracker over bitsets, then a chamber is cleared in the center and markets are placed at dead ends
+ */
+public class MazeGenerator {
+
+    // size of the mazes used for games, in rooms, each room and the wall after it is two cells
+    public static final int ROOMS_WIDE = 24;
+    public static final int ROOMS_HIGH = 18;
+    public static final int SCALE = 50;  // map pixels in each cell
+    public static final int MARKETS = 4;
+    // players start this far from the center, as a fraction of the size of the maze
+    private static final double SPAWN_DISTANCE = 0.35;
+
+    /**
+     * Makes a maze of the size used for games, with a spawn for the most players a game can have
+     * @param seed the seed, the same seed makes the same maze
+     * @return the layout of the maze
+     */
+    public static Layout generate(final long seed){
+        return generate(seed, ROOMS_WIDE, ROOMS_HIGH, Map.MAX_NUM_PLAYERS, MARKETS);
+    }
+
+    /**
+     * Makes a maze
+     * @param seed the seed, the same seed makes the same maze
+     * @param roomsWide number of rooms across the maze, at least 2
+     * @param roomsHigh number of rooms down the maze, at least 2
+     * @param numSpawns number of player spawns
+     * @param numMarkets most market slots, fewer if the maze has fewer dead ends
+     * @return the layout of the maze
+     */
+    public static Layout generate(final long seed, final int roomsWide, final int roomsHigh, final int numSpawns, final int numMarkets){
+        Random random = new Random(seed);
+        int columns = roomsWide * 2;
+        int rows = roomsHigh * 2;
+        int numRooms = roomsWide * roomsHigh;
+        // start with every cell a wall except the rooms
+        long[] wallCells = new long[(columns * rows + 63) / 64];
+        Arrays.fill(wallCells, -1L);
+        for (int room = 0; room < numRooms; room++){
+            clear(wallCells, columns, (room % roomsWide) * 2, (room / roomsWide) * 2);
+        }
+
+        // carve passages, walking to a random unvisited neighbor and backing up when there is none
+        long[] visited = new long[(numRooms + 63) / 64];
+        int[] stack = new int[numRooms];
+        int[] neighbors = new int[4];
+        int depth = 0;
+        int start = random.nextInt(numRooms);
+        visited[start >> 6] |= 1L << start;
+        stack[depth++] = start;
+        while (depth > 0){
+            int room = stack[depth - 1];
+            int roomX = room % roomsWide;
+            int roomY = room / roomsWide;
+            int numNeighbors = 0;
+            for (int direction = 0; direction < 4; direction++){
+                int next = getNeighbor(roomX, roomY, direction, roomsWide, roomsHigh);
+                if ((visited[next >> 6] & (1L << next)) == 0){
+                    neighbors[numNeighbors++] = direction;
+                }
+            }
+            if (numNeighbors == 0){
+                depth--;
+                continue;
+            }
+            int direction = neighbors[random.nextInt(numNeighbors)];
+            int next = getNeighbor(roomX, roomY, direction, roomsWide, roomsHigh);
+            // the cell between the rooms, wrapping around the sides
+            clear(wallCells, columns, Math.floorMod(roomX * 2 + FlowField.getStepColumn(direction), columns),
+                    Math.floorMod(roomY * 2 + FlowField.getStepRow(direction), rows));
+            visited[next >> 6] |= 1L << next;
+            stack[depth++] = next;
+        }
+
+        // clear the central chamber, the maze is already connected so opening more cells keeps it connected
+        int chamberRadius = Math.max(1, Math.min(roomsWide, roomsHigh) / 8);
+        int centerX = (roomsWide / 2) * 2;
+        int centerY = (roomsHigh / 2) * 2;
+        for (int row = centerY - chamberRadius * 2; row <= centerY + chamberRadius * 2; row++){
+            for (int col = centerX - chamberRadius * 2; col <= centerX + chamberRadius * 2; col++){
+                clear(wallCells, columns, Math.floorMod(col, columns), Math.floorMod(row, rows));
+            }
+        }
+
+        // players start around the center, spread evenly, in the nearest room. StrictMath gives the same result on
+        // every machine, where Math may not, so every client puts the spawns in the same rooms
+        ArrayList<Point> spawns = new ArrayList<>();
+        for (int i = 0; i < numSpawns; i++){
+            double angle = 2 * Math.PI * i / numSpawns;
+            int roomX = Math.floorMod((int) Math.round(roomsWide / 2 + StrictMath.cos(angle) * roomsWide * SPAWN_DISTANCE), roomsWide);
+            int roomY = Math.floorMod((int) Math.round(roomsHigh / 2 + StrictMath.sin(angle) * roomsHigh * SPAWN_DISTANCE), roomsHigh);
+            spawns.add(new Point(roomX * 2, roomY * 2));
+        }
+
+        // markets go in random dead ends, rooms with only one way out
+        int[] deadEnds = new int[numRooms];
+        int numDeadEnds = 0;
+        for (int room = 0; room < numRooms; room++){
+            int roomX = room % roomsWide;
+            int roomY = room / roomsWide;
+            int exits = 0;
+            for (int direction = 0; direction < 4; direction++){
+                int col = Math.floorMod(roomX * 2 + FlowField.getStepColumn(direction), columns);
+                int row = Math.floorMod(roomY * 2 + FlowField.getStepRow(direction), rows);
+                if (!isWall(wallCells, columns, col, row)){
+                    exits++;
+                }
+            }
+            if (exits == 1){
+                deadEnds[numDeadEnds++] = room;
+            }
+        }
+        ArrayList<Point> markets = new ArrayList<>();
+        for (int i = 0; i < numMarkets && i < numDeadEnds; i++){
+            // pick from the dead ends not picked yet, moving the pick to the front
+            int pick = i + random.nextInt(numDeadEnds - i);
+            int room = deadEnds[pick];
+            deadEnds[pick] = deadEnds[i];
+            deadEnds[i] = room;
+            markets.add(new Point((room % roomsWide) * 2, (room / roomsWide) * 2));
+        }
+        return Layout.fromWallCells(columns, rows, SCALE, wallCells, spawns, markets);
+    }
+
+    /**
+     * The room next to a room in a direction, wrapping around the sides of the maze
+     * @param roomX the column of the room, in rooms
+     * @param roomY the row of the room, in rooms
+     * @param direction one of the directions of FlowField
+     * @return the index of the next room
+     */
+    private static int getNeighbor(final int roomX, final int roomY, final int direction, final int roomsWide, final int roomsHigh){
+        int x = Math.floorMod(roomX + FlowField.getStepColumn(direction), roomsWide);
+        int y = Math.floorMod(roomY + FlowField.getStepRow(direction), roomsHigh);
+        return y * roomsWide + x;
+    }
+
+    private static void clear(final long[] cells, final int columns, final int col, final int row){
+        int cell = row * columns + col;
+        cells[cell >> 6] &= ~(1L << cell);
+    }
+
+    private static boolean isWall(final long[] cells, final int columns, final int col, final int row){
+        int cell = row * columns + col;
+        return (cells[cell >> 6] & (1L << cell)) != 0;
+    }
+}
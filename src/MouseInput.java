@@ -2,13 +2,15 @@ import java.awt.*;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Handles all of the mouse-related events for the player
  */
 public class MouseInput implements MouseListener{
 
-    private boolean mousePressed = false;
+    // presses since the input thread last took them, counted on the event thread so none are lost between reads
+    private final AtomicInteger presses = new AtomicInteger();
 
     @Override
     public void mouseClicked(MouseEvent e) {
@@ -17,7 +19,7 @@ public class MouseInput implements MouseListener{
 
     @Override
     public void mousePressed(MouseEvent e) {
-        mousePressed = true;
+        presses.incrementAndGet();
     }
 
     @Override
@@ -36,13 +38,11 @@ public class MouseInput implements MouseListener{
     }
 
     /**
-     * If the mouse has been clicked since the last call, sets mousePressed to false
-     * @return if the mouse has been clicked since the last time this function was called
+     * The number of times the mouse has been pressed since the last call, resetting the count to zero
+     * @return the number of presses since the last time this function was called
      */
-    public boolean mouseHasBeenPressed(){
-        boolean toReturn = mousePressed;
-        mousePressed = false;
-        return toReturn;
+    public int takePresses(){
+        return presses.getAndSet(0);
     }
 
 }
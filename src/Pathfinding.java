@@ -0,0 +1,83 @@
+import java.awt.*;
+import java.util.ArrayList;
+
+/**
+ * Keeps a flow field toward each player so any number of creatures can chase the players without searching for a
+ * path each. A field is only searched again when its player moves to a different cell, and the searching is split
+ * between updates so no single update does more than a fixed amount of work
+ */
+public class Pathfinding {
+
+    // most cells searched across all of the fields in one update
+    private static final int CELLS_PER_UPDATE = 512;
+
+    private final Layout layout;
+    private FlowField[] fields = new FlowField[0];
+    private int nextField = 0;  // the field that gets to search first next update, so every field gets a turn
+
+    /**
+     * @param layout the layout holding the grid of wall cells
+     */
+    public Pathfinding(final Layout layout){
+        this.layout = layout;
+    }
+
+    /**
+     * Points each field at the cell its player is in and continues the searches that are not finished
+     * @param players the players to chase, the index of a player is the index of its field
+     */
+    public void update(final ArrayList<StarStonePlayer> players){
+        if (fields.length != players.size()){
+            fields = new FlowField[players.size()];
+            nextField = 0;
+        }
+        for (int i = 0; i < players.size(); i++){
+            StarStonePlayer p = players.get(i);
+            if (!p.isActive()){
+                continue;
+            }
+            if (fields[i] == null){
+                fields[i] = new FlowField(layout);
+            }
+            // the player is in the cell holding the point it rotates around
+            Point loc = p.getTopLeft();
+            Point anchor = p.getAnchor();
+            fields[i].setTarget(Math.floorDiv(loc.x + anchor.x, layout.getScale()),
+                    Math.floorDiv(loc.y + anchor.y, layout.getScale()));
+        }
+        // share the searching between the fields, starting at a different field each update
+        int budget = CELLS_PER_UPDATE;
+        for (int n = 0; n < fields.length && budget > 0; n++){
+            FlowField field = fields[(nextField + n) % fields.length];
+            if (field != null){
+                budget -= field.step(budget);
+            }
+        }
+        if (fields.length > 0){
+            nextField = (nextField + 1) % fields.length;
+        }
+    }
+
+    /**
+     * The direction to step from a location to get closer to a player
+     * @param playerIndex the index of the player to chase
+     * @param x x coordinate of the location
+     * @param y y coordinate of the location
+     * @return one of the FlowField directions, FlowField.NONE if there is no path or the field is not searched yet
+     */
+    public int getDirection(final int playerIndex, final float x, final float y){
+        if (playerIndex >= fields.length || fields[playerIndex] == null || !fields[playerIndex].hasTarget()){
+            return FlowField.NONE;
+        }
+        return fields[playerIndex].getDirection((int) Math.floor(x / layout.getScale()), (int) Math.floor(y / layout.getScale()));
+    }
+
+    /**
+     * The flow field toward a player, for looking up distances
+     * @param playerIndex the index of the player
+     * @return the field, null if the player has not been active during an update
+     */
+    public FlowField getField(final int playerIndex){
+        return playerIndex < fields.length ? fields[playerIndex] : null;
+    }
+}
@@ -0,0 +1,135 @@
+import java.awt.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures how the client is running and draws the numbers over the view. Frames and updates are counted as they
+ * happen, and the text is only made again once a second, so showing the numbers barely changes them
+ */
+public class PerformanceHud {
+
+    private static final long SAMPLE_NANOS = 1000000000L;  // how often the shown numbers are worked out again
+    private static final double NANOS_PER_MILLI = 1000000.0;
+    private static final int MARGIN = 5;
+    private static final int LINE_HEIGHT = 15;
+    private static final int WIDTH = 270;
+    private static final Color BACKGROUND = new Color(0, 0, 0, 160);
+
+    // sums since the last sample, only touched on the render thread
+    private long sampleStart = System.nanoTime();
+    private int frames = 0;
+    private long frameNanos = 0;
+    private long longestFrame = 0;
+    private int ticks = 0;
+    private long lastTick = 0;
+    private long tickNanos = 0;
+    private int roundTrips = 0;
+    private long roundTripNanos = 0;
+    private long sampleAllocated = -1;
+    // the input being timed and when it was sent, only used holding the lock of the hud as the input thread sets them
+    private int timedSequence = 0;  // 0 if no input is being timed
+    private long timedSent = 0;
+
+    private String[] lines = {"measuring..."};
+
+    /**
+     * Records that new input was sent to the server. Only one input is timed at once, so while one is waiting to be
+     * applied the inputs sent after it are not timed
+     * @param sequence the sequence number of the input
+     */
+    public synchronized void inputSent(final int sequence){
+        if (timedSequence == 0){
+            timedSequence = sequence;
+            timedSent = System.nanoTime();
+        }
+    }
+
+    /**
+     * Records that the server applied input, finishing the round trip of the input being timed if it is this input
+     * or a newer one, since the server only applies the latest input it has. Called on the render thread
+     * @param sequence the sequence number of the input the server applied
+     */
+    public synchronized void inputApplied(final int sequence){
+        if (timedSequence != 0 && sequence >= timedSequence){
+            roundTrips++;
+            roundTripNanos += System.nanoTime() - timedSent;
+            timedSequence = 0;
+        }
+    }
+
+    /**
+     * Records that the server finished an update, called on the render thread
+     */
+    public void tickReceived(){
+        long now = System.nanoTime();
+        if (lastTick != 0){
+            ticks++;
+            tickNanos += now - lastTick;
+        }
+        lastTick = now;
+    }
+
+    /**
+     * Records a drawn frame and, once a second, works out the numbers to show. Called on the render thread
+     * @param frameStart when drawing the frame started, from System.nanoTime
+     * @param map the map being shown, for the number of elements
+     */
+    public void frameDrawn(final long frameStart, final Map map){
+        long now = System.nanoTime();
+        long frameTime = now - frameStart;
+        frames++;
+        frameNanos += frameTime;
+        longestFrame = Math.max(longestFrame, frameTime);
+        long elapsed = now - sampleStart;
+        if (elapsed < SAMPLE_NANOS){
+            return;
+        }
+        long allocated = getAllocatedBytes();
+        String allocationRate = "unavailable";
+        if (allocated >= 0 && sampleAllocated >= 0){
+            allocationRate = String.format("%.1f KB/s", (allocated - sampleAllocated) * (SAMPLE_NANOS / (double) elapsed) / 1024);
+        }
+        lines = new String[]{
+                String.format("FPS: %.1f", frames * (SAMPLE_NANOS / (double) elapsed)),
+                String.format("frame: %.2f ms avg, %.2f ms max", frameNanos / NANOS_PER_MILLI / frames, longestFrame / NANOS_PER_MILLI),
+                ticks == 0 ? "tick: none" : String.format("tick: %.1f ms", tickNanos / NANOS_PER_MILLI / ticks),
+                roundTrips == 0 ? "RTT: none" : String.format("RTT: %.1f ms", roundTripNanos / NANOS_PER_MILLI / roundTrips),
+                "players: " + map.getPlayerCount() + " entities: " + map.getEntityCount() + " bullets: " + map.getBulletCount(),
+                "render allocation: " + allocationRate
+        };
+        sampleStart = now;
+        sampleAllocated = allocated;
+        frames = 0;
+        frameNanos = 0;
+        longestFrame = 0;
+        ticks = 0;
+        tickNanos = 0;
+        roundTrips = 0;
+        roundTripNanos = 0;
+    }
+
+    /**
+     * Draws the numbers in the top left of the view
+     * @param g the graphics of the view
+     */
+    public void draw(final Graphics g){
+        g.setColor(BACKGROUND);
+        g.fillRect(0, 0, WIDTH, lines.length * LINE_HEIGHT + MARGIN * 2);
+        g.setColor(Color.WHITE);
+        for (int i = 0; i < lines.length; i++){
+            g.drawString(lines[i], MARGIN, MARGIN + (i + 1) * LINE_HEIGHT - 3);
+        }
+    }
+
+    /**
+     * The total bytes allocated by the current thread, where the JVM can measure it
+     * @return the bytes allocated, or -1 if they cannot be measured
+     */
+    private static long getAllocatedBytes(){
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean){
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
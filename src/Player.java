@@ -2,8 +2,10 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.awt.image.BufferedImage;
+import java.awt.image.BufferStrategy;
 import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Handles what the player will see and how the player interacts with the game
@@ -11,23 +13,34 @@ import java.util.ArrayList;
 public class Player implements PlayerInterface{
 
     public static final int PORT = 5000;
-    private static final int INPUT_SLEEP = 25;  // amount to sleep between updating player input to the server
+    private static final int INPUT_SLEEP = 25;  // amount to sleep between checking if the player input has changed
+    // input is sent at least this often even when unchanged, so the server knows the keys are still held
+    private static final int INPUT_KEEPALIVE_TIME = 500;  // milliseconds
+    private static final int TARGET_FPS = 60;
+    private static final long FRAME_NANOS = 1000000000L / TARGET_FPS;
     public static final String SOLDIER_PISTOL_IMAGE_PATH = "src/Images/soldier_pistol.png";
     public static final String SOLDIER_RIFLE_IMAGE_PATH = "src/Images/soldier_rifle.png";
     public static final String SOLDIER_KNIFE_IMAGE_PATH = "src/Images/soldier_knife.png";
     private GameClient client;
     private JFrame frame;
     private MenuPanel menu;
-    private MapPanel mapPanel;
+    private volatile MapCanvas mapCanvas;  // made on the Swing thread, drawn on by the render thread
 
     private ArrayList<StarStonePlayer> players = new ArrayList<StarStonePlayer>();
     private StarStonePlayer thisPlayer = new StarStonePlayer();
     private Map map;
     private KeyInput keyInput = new KeyInput();
     private MouseInput mouseInput = new MouseInput();
-    private BufferedImage mapImage;
+    private PerformanceHud hud = new PerformanceHud();  // shown with the debug overlay
+    private PlayerInput input = new PlayerInput();  // the input last sent to the server
+    private int fireCount = 0;  // times the mouse has been pressed during the game
+    private long inputSentTime = 0;  // milliseconds
+    // the last update of the map handled on the render thread, sent with input so shots match what was seen
+    private volatile int shownTick = 0;
+    // messages from the server, read on the socket thread and handled in order on the render thread
+    private final LinkedBlockingQueue<String> messages = new LinkedBlockingQueue<>();
 
-    private boolean gameInProgress = false;
+    private volatile boolean gameInProgress = false;
 
     public Player(){}
 
@@ -37,6 +50,9 @@ public class Player implements PlayerInterface{
     public void play(){
         client = new GameClient(this);
         setUpGUI();
+        Thread renderThread = new Thread(this::render, "render");
+        renderThread.setDaemon(true);
+        renderThread.start();
 
         while (true){
             if (gameInProgress) {
@@ -57,6 +73,8 @@ public class Player implements PlayerInterface{
         frame = new JFrame("Star Stone");
         frame.addKeyListener(keyInput);
         frame.addMouseListener(mouseInput);
+        // read the images while the player is in the menus, so the game starts without waiting on files
+        Assets.preload(Map.BACKGROUND_IMAGE_PATH, SOLDIER_KNIFE_IMAGE_PATH, SOLDIER_PISTOL_IMAGE_PATH, SOLDIER_RIFLE_IMAGE_PATH);
         displayMenu();
     }
 
@@ -80,13 +98,13 @@ public class Player implements PlayerInterface{
       */
     private void displayGame(){
         frame.getContentPane().removeAll();
-        mapPanel = new MapPanel();
-        frame.getContentPane().add(mapPanel);
+        mapCanvas = new MapCanvas();
+        frame.getContentPane().add(mapCanvas);
         frame.pack();
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         frame.setVisible(true);
         frame.setResizable(false);
-        frame.requestFocus();
+        mapCanvas.requestFocus();
         frame.setCursor(Cursor.getPredefinedCursor(Cursor.CROSSHAIR_CURSOR));
     }
 
@@ -96,7 +114,7 @@ public class Player implements PlayerInterface{
      */
     private Point getMouseLocation(){
         Point mouseLoc = MouseInfo.getPointerInfo().getLocation();
-        Point panelLoc = mapPanel.getLocationOnScreen();
+        Point panelLoc = mapCanvas.getLocationOnScreen();
         return new Point(mouseLoc.x - panelLoc.x, mouseLoc.y - panelLoc.y);
     }
 
@@ -117,6 +135,7 @@ public class Player implements PlayerInterface{
         private JTextField gameAddress;
         private String status = "             ";
         private JLabel statusLabel;
+        private ArrayList<String> playerNames = new ArrayList<>();  // the players shown in the lobby
 
         /**
          * Sets size and background color
@@ -190,8 +209,10 @@ public class Player implements PlayerInterface{
         /**
          * Creates the lobby after joining a game but before the game starts.
          * Displays the other players and has options to leave the game
+         * @param playerNames the names of the players in the lobby
          */
-        private void createLobbyMenu(){
+        private void createLobbyMenu(final ArrayList<String> playerNames){
+            this.playerNames = playerNames;
             this.removeAll();
 
             // show how to get other players to join
@@ -206,8 +227,8 @@ public class Player implements PlayerInterface{
             this.add(Box.createVerticalGlue());
             this.add(nameHeader);
 
-            for (int i = 0; i < players.size(); i++){
-                JLabel playerLabel = new JLabel(players.get(i).getName());
+            for (int i = 0; i < playerNames.size(); i++){
+                JLabel playerLabel = new JLabel(playerNames.get(i));
                 playerLabel.setAlignmentX(JComponent.CENTER_ALIGNMENT);
                 this.add(playerLabel);
             }
@@ -219,13 +240,19 @@ public class Player implements PlayerInterface{
             this.add(leaveButton);
             JButton startButton = new JButton("Start");
             startButton.setAlignmentX(JComponent.CENTER_ALIGNMENT);
-            startButton.addActionListener(new CreateGameListener());
+            startButton.addActionListener(new CreateGameListener(false));
             this.add(startButton);
+            JButton mazeButton = new JButton("Start in a random maze");
+            mazeButton.setAlignmentX(JComponent.CENTER_ALIGNMENT);
+            mazeButton.addActionListener(new CreateGameListener(true));
+            this.add(mazeButton);
             this.add(Box.createVerticalGlue());
             this.revalidate();
             this.repaint();
         }
 
+        public int getPlayerCount(){return playerNames.size();}
+
         /**
          * Changes the status label to the new message
          * @param msg the message to change the status label to
@@ -280,26 +307,77 @@ public class Player implements PlayerInterface{
     }
 
     /**
-     * Draws the main view of the map
+     * Shows the main view of the map, drawn by the render thread rather than by Swing
      */
-    private class MapPanel extends JPanel{
+    private class MapCanvas extends Canvas{
 
-        public MapPanel(){
+        public MapCanvas(){
+            super(Surfaces.getConfiguration());
             this.setPreferredSize(new Dimension(Map.VIEW_WIDTH, Map.VIEW_HEIGHT));
+            // the render thread does all of the drawing
+            this.setIgnoreRepaint(true);
+            // the canvas takes the focus and clicks from the frame, so it needs the input listeners too
+            this.addKeyListener(keyInput);
+            this.addMouseListener(mouseInput);
         }
+    }
 
-        @Override
-        public void paintComponent(Graphics g){
-            super.paintComponent(g);
-            g.drawImage(mapImage, 0, 0, this);
+    /**
+     * Runs on the render thread. Each frame handles every message that arrived since the last frame, then draws the
+     * map if a game is in progress, then waits until the next frame is due
+     */
+    private void render(){
+        long nextFrame = System.nanoTime();
+        while (true){
+            String message;
+            while ((message = messages.poll()) != null){
+                handleServerMessage(message);
+            }
+            if (gameInProgress){
+                drawFrame();
+            }
+            nextFrame += FRAME_NANOS;
+            long wait = nextFrame - System.nanoTime();
+            if (wait > 0){
+                LockSupport.parkNanos(wait);
+            }
+            // if a frame ran long, start counting again from now instead of rushing to catch up
+            else if (wait < -FRAME_NANOS){
+                nextFrame = System.nanoTime();
+            }
         }
     }
 
     /**
-     * Sets the current image to be the most recent view from the map
+     * Draws the view of the map onto the back buffer of the canvas and flips it onto the screen, drawing again if
+     * the buffers lose their contents. The debug shapes and the performance numbers are drawn when toggled with F3
      */
-    private void updateMap(){
-        mapImage = map.getPlayerView(thisPlayer);
+    private void drawFrame(){
+        BufferStrategy strategy = mapCanvas.getBufferStrategy();
+        if (strategy == null){
+            // the canvas can only make its buffers once it is on the screen
+            if (!mapCanvas.isDisplayable()){
+                return;
+            }
+            mapCanvas.createBufferStrategy(2);
+            strategy = mapCanvas.getBufferStrategy();
+        }
+        long frameStart = System.nanoTime();
+        boolean debugShown = keyInput.isDebugShown();
+        map.setDebugDrawn(debugShown);
+        do {
+            do {
+                Graphics g = strategy.getDrawGraphics();
+                map.drawPlayerView(thisPlayer, g);
+                if (debugShown){
+                    hud.draw(g);
+                }
+                g.dispose();
+            } while (strategy.contentsRestored());
+            strategy.show();
+        } while (strategy.contentsLost());
+        Toolkit.getDefaultToolkit().sync();
+        hud.frameDrawn(frameStart, map);
     }
 
     /**
@@ -308,15 +386,15 @@ public class Player implements PlayerInterface{
     private class StartGameListener implements ActionListener {
         @Override
         public void actionPerformed(ActionEvent e) {
-            System.out.println("Start button pressed");
+            Log.info("Start button pressed");
             if (menu.isValidName()) {
                 menu.setStatus("Creating game...");
                 StarStoneGame game = new StarStoneGame();
                 if (client.startServer(PORT, game)) {
-                    System.out.println("Server created successfully");
+                    Log.info("Server created successfully");
                     joinGame("127.0.0.1", PORT);
                 } else {
-                    System.out.println("Server not created");
+                    Log.warn("Server not created");
                     menu.setStatus("Could not create server, perhaps there is already a server running?");
                 }
             }
@@ -332,7 +410,7 @@ public class Player implements PlayerInterface{
     private class JoinGameListener implements ActionListener{
         @Override
         public void actionPerformed(ActionEvent e) {
-            System.out.println("join button pressed");
+            Log.info("join button pressed");
             String address = menu.getIPAddress();
             joinGame(address, PORT);
         }
@@ -345,7 +423,7 @@ public class Player implements PlayerInterface{
         if (menu.isValidName()) {
             menu.setStatus("Joining game...");
             if (client.joinServer(address, port)) {
-                System.out.println("Joined game successfully");
+                Log.info("Joined game successfully");
                 thisPlayer.setName(menu.getName());
                 thisPlayer.setImageFilePath(SOLDIER_KNIFE_IMAGE_PATH);
                 client.sendToServer(StarStoneGame.ADD_PLAYER + GameServer.DELIMITER + thisPlayer.encode());
@@ -364,7 +442,7 @@ public class Player implements PlayerInterface{
     private class LeaveGameListener implements ActionListener{
         @Override
         public void actionPerformed(ActionEvent e) {
-            System.out.println("Leave button pressed");
+            Log.info("Leave button pressed");
             client.sendToServer(StarStoneGame.PLAYER_LEFT);
             client.close();
         }
@@ -374,11 +452,25 @@ public class Player implements PlayerInterface{
      * Launch a game using the players in the lobby
      */
     private class CreateGameListener implements ActionListener{
+        private boolean randomMaze;
+
+        /**
+         * @param randomMaze whether to play in a random maze rather than the layout file
+         */
+        public CreateGameListener(final boolean randomMaze){
+            this.randomMaze = randomMaze;
+        }
+
         @Override
         public void actionPerformed(ActionEvent e) {
             // make sure there the minimum number of players
-            if (players.size() >= Map.MIN_NUM_PLAYERS){
-                client.sendToServer(StarStoneGame.START_GAME);
+            if (menu.getPlayerCount() >= Map.MIN_NUM_PLAYERS){
+                if (randomMaze){
+                    client.sendToServer(StarStoneGame.START_GAME + GameServer.DELIMITER + StarStoneGame.RANDOM_MAZE);
+                }
+                else {
+                    client.sendToServer(StarStoneGame.START_GAME);
+                }
             }
             else{
                 menu.setStatus("At least " + Map.MIN_NUM_PLAYERS + " players are required");
@@ -387,63 +479,80 @@ public class Player implements PlayerInterface{
     }
 
     /**
-     * Reacts to player input to the game by sending a player update message to the server
+     * Checks the player input and sends it to the server if it has changed, or if it has not been sent for a while
      */
     private void handleGameInput(){
-        String playerUpdate = GameServer.PLAYER_UPDATE;
-        // if the player is not active, send an empty message
-        if (!thisPlayer.isActive()){
-            client.sendToServer(playerUpdate);
-            return;
-        }
-        // translation with the keys
-        float dx = 0;
-        float dy = 0;
-        if (keyInput.isPressed(KeyInput.D)){
-            dx += thisPlayer.getSpeed();
-        }
-        if (keyInput.isPressed(KeyInput.A)){
-            dx -= thisPlayer.getSpeed();
-        }
+        int keys = 0;
         if (keyInput.isPressed(KeyInput.W)){
-            dy -= thisPlayer.getSpeed();
+            keys |= PlayerInput.UP;
         }
         if (keyInput.isPressed(KeyInput.S)){
-            dy += thisPlayer.getSpeed();
+            keys |= PlayerInput.DOWN;
+        }
+        if (keyInput.isPressed(KeyInput.A)){
+            keys |= PlayerInput.LEFT;
         }
-        // add a message about movement if a key is pressed
-        if (dx != 0 || dy != 0) {
-            playerUpdate += GameServer.UPDATE_DELIMITER + StarStoneGame.PLAYER_TRANSLATE + GameServer.DELIMITER + (int)dx + GameServer.DELIMITER + (int)dy;
+        if (keyInput.isPressed(KeyInput.D)){
+            keys |= PlayerInput.RIGHT;
         }
         // find the current angle the player should face
         Point mouseLocation = getMouseLocation();
         // player will always be in the center
-        Point playerLocation = new Point(Map.VIEW_WIDTH / 2, Map.VIEW_HEIGHT / 2);
-        double angle = Math.atan2(mouseLocation.y - playerLocation.y, mouseLocation.x - playerLocation.x);
-        // if the angle has changed, send a message to the server
-        if (Math.abs(angle - thisPlayer.getAngle()) > 0.01){
-            playerUpdate += GameServer.UPDATE_DELIMITER + StarStoneGame.PLAYER_ROTATE + GameServer.DELIMITER + angle;
-        }
-        // add a message about a mouse click
-        if (mouseInput.mouseHasBeenPressed()){
-            playerUpdate += GameServer.UPDATE_DELIMITER + StarStoneGame.PLAYER_SHOOT;
-        }
-        // send the message to the server
-        client.sendToServer(playerUpdate);
+        double angle = Math.atan2(mouseLocation.y - Map.VIEW_HEIGHT / 2, mouseLocation.x - Map.VIEW_WIDTH / 2);
+        // count presses instead of sending each one, so a press is not lost if the server only reads the latest input
+        fireCount += mouseInput.takePresses();
+        long time = System.currentTimeMillis();
+        boolean changed = input.set(keys, angle, fireCount);
+        if (changed || time - inputSentTime >= INPUT_KEEPALIVE_TIME){
+            input.setTick(shownTick);
+            client.sendToServer(GameServer.PLAYER_UPDATE + GameServer.UPDATE_DELIMITER + input.encode());
+            inputSentTime = time;
+            // a keepalive repeats a sequence number the server may have already applied, so only new input is timed
+            if (changed){
+                hud.inputSent(input.getSequence());
+            }
+        }
     }
 
+    /**
+     * Called on the socket thread, queues the message for the render thread so reading is never held up by drawing
+     * @param message the message from the server
+     */
     @Override
     public void onServerMessage(String message) {
+        messages.add(message);
+    }
+
+    /**
+     * Redraws the lobby on the Swing thread with the players as they are now
+     */
+    private void showLobby(){
+        ArrayList<String> playerNames = new ArrayList<>();
+        for (int i = 0; i < players.size(); i++){
+            playerNames.add(players.get(i).getName());
+        }
+        SwingUtilities.invokeLater(() -> menu.createLobbyMenu(playerNames));
+    }
+
+    /**
+     * Handles a message from the server, called on the render thread in the order the messages arrived. Changes to
+     * the menus and the frame are passed to the Swing thread
+     * @param message the message from the server
+     */
+    private void handleServerMessage(final String message) {
  //       System.out.println("The player reads this message from the server: " + message);
         // if there was an error, reset everything
         if (message.equals(GameClient.SERVER_ERROR)){
-            displayMenu();
-            menu.setStatus("Disconnected from server");
+            gameInProgress = false;
+            SwingUtilities.invokeLater(() -> {
+                displayMenu();
+                menu.setStatus("Disconnected from server");
+            });
             players.clear();
         }
         // if the connection is rejected because there are too many players
         if (message.equals(GameServer.CONNECTION_REJECTED)){
-            menu.setStatus("Connection rejected, game is full or started");
+            SwingUtilities.invokeLater(() -> menu.setStatus("Connection rejected, game is full or started"));
         }
         // given when first joining a game, gives a list of players
         else if (message.startsWith(StarStoneGame.All_PLAYERS)){
@@ -456,12 +565,13 @@ public class Player implements PlayerInterface{
             }
             // this player is the most recent player, at the end of the list
             thisPlayer = players.get(players.size() - 1);
-            menu.createLobbyMenu();
+            showLobby();
         }
         // when joining the game the server sends the ip address it wants to be known by
         else if (message.startsWith(StarStoneGame.SET_SERVER_IP)){
-            menu.setServerIP(message.split(GameServer.DELIMITER)[1]);
-            menu.createLobbyMenu();
+            String address = message.split(GameServer.DELIMITER)[1];
+            SwingUtilities.invokeLater(() -> menu.setServerIP(address));
+            showLobby();
         }
         // a new player has joined
         else if (message.startsWith(StarStoneGame.ADD_PLAYER)){
@@ -470,21 +580,32 @@ public class Player implements PlayerInterface{
             p.construct(playerInfo[1]);
             players.add(p);
             // redraw the menu to include the new player
-            menu.createLobbyMenu();
+            showLobby();
         }
         // a player left
         else if (message.startsWith(StarStoneGame.PLAYER_LEFT)){
             int index = Integer.valueOf(message.split(GameServer.DELIMITER)[1]);
             players.remove(index);
             // redraw the menu to remove the player
-            menu.createLobbyMenu();
+            showLobby();
         }
         // starting the game
         else if (message.startsWith(StarStoneGame.START_GAME)){
-            map = new Map(players);
-            updateMap();
-            displayGame();
-            gameInProgress = true;
+            // the server sends the seed of the maze, or nothing to use the layout file
+            String[] info = message.split(GameServer.DELIMITER);
+            if (info.length > 1){
+                map = new Map(players, MazeGenerator.generate(Long.parseLong(info[1])));
+            }
+            else {
+                map = new Map(players);
+            }
+            // clicks on the menu are not shots
+            mouseInput.takePresses();
+            // only draw once the canvas is made
+            SwingUtilities.invokeLater(() -> {
+                displayGame();
+                gameInProgress = true;
+            });
         }
         // a player is translating
         else if (message.startsWith(StarStoneGame.PLAYER_TRANSLATE)){
@@ -506,16 +627,19 @@ public class Player implements PlayerInterface{
         else if (message.startsWith(StarStoneGame.PLAYER_SHOOT)){
             String[] info = message.split(GameServer.DELIMITER);
             int index = Integer.valueOf(info[1]);
-            // have the map handle the player shooting
-            map.playerShootBullet(index);
-  //          Bullet b = new Bullet(players.get(index).getShootLocation(), players.get(index).getAngle());
-  //          map.addElement(b);
+            int rewindTicks = Integer.valueOf(info[2]);
+            // have the map handle the player shooting, rewinding the same as the server did
+            map.playerShootBullet(index, rewindTicks, false);
+        }
+        // the server has applied input from this player
+        else if (message.startsWith(StarStoneGame.INPUT_APPLIED)){
+            hud.inputApplied(Integer.parseInt(message.split(GameServer.DELIMITER)[1]));
         }
-        // finished updating all the players, draw the map and repaint the frame
+        // finished updating all the players, the map is drawn on the next frame
         else if (message.startsWith(GameServer.END_PLAYER_UPDATE)){
+            hud.tickReceived();
             map.handleMapElements(false);
-            updateMap();
-            frame.repaint();
+            shownTick = map.getTick();
         }
     }
 }
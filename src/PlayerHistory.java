@@ -0,0 +1,84 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Where each player was and which way they faced over the last few updates, so a shot can be checked against what
+ * the shooter saw rather than where the players are now. Each update is one slot of a ring of primitive arrays, so
+ * recording every update allocates nothing
+ */
+public class PlayerHistory {
+
+    // number of updates kept, at 50 milliseconds an update this covers a round trip of one second
+    public static final int TICKS = 20;
+    private static final int NO_TICK = -1;
+
+    private int numPlayers = 0;
+    private final int[] slotTick = new int[TICKS];  // the update each slot holds, NO_TICK if it is empty
+    // the pose of each player in each slot, at slot * numPlayers + player
+    private int[] x = new int[0];
+    private int[] y = new int[0];
+    private double[] angle = new double[0];
+    private boolean[] active = new boolean[0];
+    private Bounds[] hulls = new Bounds[0];  // moved to a recorded pose when asked for, one for each player
+
+    public PlayerHistory(){
+        Arrays.fill(slotTick, NO_TICK);
+    }
+
+    /**
+     * Records where every player is for an update, replacing the oldest update kept
+     * @param tick the number of the update
+     * @param players the players in the map
+     */
+    public void record(final int tick, final ArrayList<StarStonePlayer> players){
+        // players only change between games, when everything recorded is for players that are gone
+        if (players.size() != numPlayers){
+            numPlayers = players.size();
+            x = new int[TICKS * numPlayers];
+            y = new int[TICKS * numPlayers];
+            angle = new double[TICKS * numPlayers];
+            active = new boolean[TICKS * numPlayers];
+            hulls = new Bounds[numPlayers];
+            Arrays.fill(slotTick, NO_TICK);
+        }
+        int slot = Math.floorMod(tick, TICKS);
+        slotTick[slot] = tick;
+        for (int i = 0; i < numPlayers; i++){
+            StarStonePlayer p = players.get(i);
+            int index = slot * numPlayers + i;
+            x[index] = p.getTopLeft().x;
+            y[index] = p.getTopLeft().y;
+            angle[index] = p.getAngle();
+            active[index] = p.isActive();
+        }
+    }
+
+    /**
+     * If the given update is still kept
+     * @param tick the number of the update
+     * @return whether or not the poses of the update are known
+     */
+    public boolean has(final int tick){
+        return tick >= 0 && slotTick[Math.floorMod(tick, TICKS)] == tick;
+    }
+
+    /**
+     * The hull of a player where it was during an update. The same hull is reused for each call for the player, so
+     * it is only valid until the next call
+     * @param tick the number of the update, must be kept
+     * @param player the index of the player
+     * @param shape the current hull of the player, used for the shape of the hull
+     * @return the hull moved to where the player was, or null if the player was not active
+     */
+    public Bounds getHull(final int tick, final int player, final Bounds shape){
+        int index = Math.floorMod(tick, TICKS) * numPlayers + player;
+        if (!active[index]){
+            return null;
+        }
+        if (hulls[player] == null){
+            hulls[player] = new Bounds(shape);
+        }
+        hulls[player].setPose(x[index], y[index], angle[index]);
+        return hulls[player];
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * The controls a player is holding: which movement keys are down, where they are aiming, and how many times they
+ * have fired. The client only sends this when it changes, or as a keepalive, and the server keeps the latest one
+ * for each player and applies it every update
+ */
+public class PlayerInput {
+
+    // bits of the key mask, one for each movement key held down
+    public static final int UP = 1;
+    public static final int DOWN = 2;
+    public static final int LEFT = 4;
+    public static final int RIGHT = 8;
+    // number of steps in a full turn the aim is rounded to, finer than any change a player could see
+    public static final int ANGLE_STEPS = 1024;
+
+    private int sequence = 0;  // goes up by one with each input sent, so older input can be ignored
+    private int keys = 0;
+    private int angle = 0;  // in steps of a full turn, from 0 to ANGLE_STEPS - 1
+    private int fireCount = 0;  // total number of times fire has been pressed, so merged inputs lose no shots
+    private int tick = 0;  // the last update the client had shown, so shots can be checked against what it saw
+    // what the server has already applied, only used on the server
+    private int appliedSequence = 0;
+    private int appliedAngle = 0;  // players start facing angle 0
+    private int appliedFireCount = 0;
+    private long receivedTime = 0;  // milliseconds
+
+    /**
+     * Changes the input to the given controls, going to the next sequence number if anything changed
+     * @param keys the mask of movement keys held down
+     * @param angle the aim angle, in radians
+     * @param fireCount the total number of times fire has been pressed
+     * @return whether or not anything changed
+     */
+    public boolean set(final int keys, final double angle, final int fireCount){
+        int steps = toSteps(angle);
+        if (keys == this.keys && steps == this.angle && fireCount == this.fireCount){
+            return false;
+        }
+        this.keys = keys;
+        this.angle = steps;
+        this.fireCount = fireCount;
+        sequence++;
+        return true;
+    }
+
+    /**
+     * Writes the input to a string that can be understood by decode()
+     * @return the type of message followed by the sequence number, keys, angle, fire count, and shown update
+     */
+    public String encode(){
+        return StarStoneGame.PLAYER_INPUT + GameServer.DELIMITER + sequence + GameServer.DELIMITER + keys
+                + GameServer.DELIMITER + angle + GameServer.DELIMITER + fireCount + GameServer.DELIMITER + tick;
+    }
+
+    /**
+     * Reads an input made by encode(), ignoring it if it is older than the input already read
+     * @param message the encoded input
+     * @param time when the message was received, in milliseconds
+     * @return whether or not the input was newer and was read
+     */
+    public boolean decode(final String message, final long time){
+        String[] info = message.split(GameServer.DELIMITER);
+        int newSequence = Integer.parseInt(info[1]);
+        if (newSequence < sequence){
+            return false;
+        }
+        sequence = newSequence;
+        keys = Integer.parseInt(info[2]);
+        angle = Math.floorMod(Integer.parseInt(info[3]), ANGLE_STEPS);
+        fireCount = Integer.parseInt(info[4]);
+        tick = Integer.parseInt(info[5]);
+        receivedTime = time;
+        return true;
+    }
+
+    /**
+     * If a newer input has been read since the last call, used by the server to tell the client its input was applied
+     * @return whether or not the sequence number has changed
+     */
+    public boolean takeSequenceChange(){
+        boolean changed = sequence != appliedSequence;
+        appliedSequence = sequence;
+        return changed;
+    }
+
+    /**
+     * If the aim has changed since the last call, used by the server to only rotate players that turned
+     * @return whether or not the aim has changed
+     */
+    public boolean takeAngleChange(){
+        boolean changed = angle != appliedAngle;
+        appliedAngle = angle;
+        return changed;
+    }
+
+    /**
+     * If fire has been pressed since the last call, any number of presses between calls count as one
+     * @return whether or not fire has been pressed
+     */
+    public boolean takeFire(){
+        boolean fired = fireCount != appliedFireCount;
+        appliedFireCount = fireCount;
+        return fired;
+    }
+
+    /**
+     * Converts an angle to the nearest step
+     * @param radians the angle, in radians
+     * @return the step, from 0 to ANGLE_STEPS - 1
+     */
+    public static int toSteps(final double radians){
+        return Math.floorMod((int) Math.round(radians * ANGLE_STEPS / (2 * Math.PI)), ANGLE_STEPS);
+    }
+
+    public boolean isPressed(final int key){return (keys & key) != 0;}
+    public int getSequence(){return sequence;}
+    public int getKeys(){return keys;}
+    public double getAngle(){return angle * 2 * Math.PI / ANGLE_STEPS;}
+    public int getFireCount(){return fireCount;}
+    public int getTick(){return tick;}
+    public void setTick(final int tick){this.tick = tick;}
+    public long getReceivedTime(){return receivedTime;}
+}
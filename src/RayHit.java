@@ -0,0 +1,37 @@
+/**
+ * What a ray cast through the map runs into first, filled in by Map.raycast so a result can be reused
+ */
+public class RayHit {
+
+    public static final int NOTHING = 0;
+    public static final int WALL = 1;
+    public static final int PLAYER = 2;
+
+    private int type = NOTHING;
+    private int playerIndex = -1;
+    private float distance;
+    private float x;
+    private float y;
+
+    /**
+     * Sets what was hit
+     * @param type one of NOTHING, WALL, or PLAYER
+     * @param playerIndex the index of the player hit, -1 if a player was not hit
+     * @param distance how far along the ray the hit is, the full length of the ray if nothing is hit
+     * @param x x coordinate of where the hit is, wrapped into the map
+     * @param y y coordinate of where the hit is, wrapped into the map
+     */
+    public void set(final int type, final int playerIndex, final float distance, final float x, final float y){
+        this.type = type;
+        this.playerIndex = playerIndex;
+        this.distance = distance;
+        this.x = x;
+        this.y = y;
+    }
+
+    public int getType(){return type;}
+    public int getPlayerIndex(){return playerIndex;}
+    public float getDistance(){return distance;}
+    public float getX(){return x;}
+    public float getY(){return y;}
+}
@@ -2,64 +2,137 @@ import java.awt.*;
 import java.util.ArrayList;
 
 /**
- * Sprite bounding boxes for detecting collisions and for determining area to redraw
+ * Sprite bounding boxes for detecting collisions and for determining area to redraw.
+ * The rectangles are stored as packed ints so intersection checks never allocate
  */
 public class RectBounds {
 
+    // number of ints used to store each rectangle (x, y, width, height)
+    private static final int RECT_SIZE = 4;
+    // returned by the sweep checks when a moving square never overlaps
+    public static final float NO_HIT = Float.POSITIVE_INFINITY;
+
     /**
-     * Takes care of rectangles hanging over the side of the map by making more rectangles to cover the same area
-     * @param r the rectangle to make covering rectangles for
-     * @return a list of all rectangles that collectively cover the full extent of r
+     * Detection if two spans on a wrapping axis overlap. A span hanging over the end of the axis is also checked
+     * after shifting it back by the size of the axis, which matches covering it with an extra rectangle
+     * @param p1 the start of the first span
+     * @param len1 the length of the first span
+     * @param p2 the start of the second span
+     * @param len2 the length of the second span
+     * @param size the size of the axis, the map width or height
+     * @return if the spans overlap on the wrapping axis
      */
-    private static ArrayList<Rectangle> getAllMapRects(final Rectangle r){
-        ArrayList<Rectangle> rects = new ArrayList<>();
-        rects.add(new Rectangle(r.x, r.y, r.width, r.height));
-        // if hanging over x axis
-        if (r.x + r.width >= Map.WIDTH){
-            rects.add(new Rectangle(r.x - Map.WIDTH, r.y, r.width, r.height));
+    private static boolean spansIntersect(final int p1, final int len1, final int p2, final int len2, final int size){
+        if (p2 + len2 > p1 && p1 + len1 > p2){
+            return true;
         }
-        // if hanging over y axis
-        if (r.y + r.height >= Map.HEIGHT){
-            rects.add(new Rectangle(r.x, r.y - Map.HEIGHT, r.width, r.height));
+        // first span hangs over the axis, check its shifted copy against the second span
+        if (p1 + len1 >= size && p2 + len2 > p1 - size && p1 - size + len1 > p2){
+            return true;
         }
-        // if hanging over both axes
-        if (r.x + r.width >= Map.WIDTH && r.y + r.height >= Map.HEIGHT){
-            rects.add(new Rectangle(r.x - Map.WIDTH, r.y - Map.HEIGHT, r.width, r.height));
+        // second span hangs over the axis, check it against the first span
+        // (if both hang over, shifting both gives the same result as shifting neither)
+        return p2 + len2 >= size && p2 - size + len2 > p1 && p1 + len1 > p2 - size;
+    }
+
+    /**
+     * Detection if two rectangles intersect, taking into account rectangles hanging over the side of the map
+     * @return if the rectangles, or any of their wrapped copies, intersect
+     */
+    public static boolean rectsIntersect(final int x1, final int y1, final int w1, final int h1,
+                                          final int x2, final int y2, final int w2, final int h2){
+        if (w1 <= 0 || h1 <= 0 || w2 <= 0 || h2 <= 0){
+            return false;
         }
-        return rects;
+        // the wrapped copies are every combination of x and y shifts, so the axes can be checked separately
+        return spansIntersect(x1, w1, x2, w2, Map.WIDTH) && spansIntersect(y1, h1, y2, h2, Map.HEIGHT);
     }
 
     /**
-     * Detection if any of the rectangles in the bounds intersect
-     * @param rb1 the first bounds to check intersection with
-     * @param rb2 the second bounds to check intersection with
-     * @return if any of the rectangles in the bounds intersect
+     * Finds when a square moving in a straight line first overlaps a rectangle, without wrapping
+     * @return the fraction of the move, from 0 to 1, when they first overlap, NO_HIT if they never overlap
      */
-    public static boolean boundsIntersect(final RectBounds rb1, final RectBounds rb2){
-        for (Rectangle first : rb1.boundingRects){
-            for (Rectangle second : rb2.boundingRects){
-                for (Rectangle r1 : getAllMapRects(first)){
-                    for (Rectangle r2 : getAllMapRects(second)){
-                        if (r1.intersects(r2)){
-                            return true;
-                        }
-                    }
+    private static float sweepSquare(final float x, final float y, final float dx, final float dy, final int size,
+                                     final int rx, final int ry, final int rw, final int rh){
+        float enter = 0;
+        float exit = 1;
+        // the square overlaps the rectangle while its corner is strictly inside the rectangle grown by the size
+        if (dx == 0){
+            if (x <= rx - size || x >= rx + rw){
+                return NO_HIT;
+            }
+        }
+        else {
+            float t1 = (rx - size - x) / dx;
+            float t2 = (rx + rw - x) / dx;
+            enter = Math.max(enter, Math.min(t1, t2));
+            exit = Math.min(exit, Math.max(t1, t2));
+        }
+        if (dy == 0){
+            if (y <= ry - size || y >= ry + rh){
+                return NO_HIT;
+            }
+        }
+        else {
+            float t1 = (ry - size - y) / dy;
+            float t2 = (ry + rh - y) / dy;
+            enter = Math.max(enter, Math.min(t1, t2));
+            exit = Math.min(exit, Math.max(t1, t2));
+        }
+        return enter < exit ? enter : NO_HIT;
+    }
+
+    /**
+     * Finds when a square moving in a straight line first overlaps a rectangle. The rectangle is also checked
+     * one map width and height away in every direction, so moves that cross the side of the map are handled
+     * @param x x coordinate of the top left of the square at the start of the move
+     * @param y y coordinate of the top left of the square at the start of the move
+     * @param dx how far the square moves in the x direction
+     * @param dy how far the square moves in the y direction
+     * @param size the width and height of the square
+     * @return the fraction of the move, from 0 to 1, when they first overlap, NO_HIT if they never overlap
+     */
+    public static float sweepRect(final float x, final float y, final float dx, final float dy, final int size,
+                                  final int rx, final int ry, final int rw, final int rh){
+        if (rw <= 0 || rh <= 0){
+            return NO_HIT;
+        }
+        // the area covered by the whole move, used to skip copies of the rectangle that can not be reached
+        float minX = Math.min(x, x + dx);
+        float maxX = Math.max(x, x + dx) + size;
+        float minY = Math.min(y, y + dy);
+        float maxY = Math.max(y, y + dy) + size;
+        float first = NO_HIT;
+        for (int shiftX = -Map.WIDTH; shiftX <= Map.WIDTH; shiftX += Map.WIDTH){
+            if (rx + shiftX >= maxX || rx + shiftX + rw <= minX){
+                continue;
+            }
+            for (int shiftY = -Map.HEIGHT; shiftY <= Map.HEIGHT; shiftY += Map.HEIGHT){
+                if (ry + shiftY >= maxY || ry + shiftY + rh <= minY){
+                    continue;
+                }
+                float t = sweepSquare(x, y, dx, dy, size, rx + shiftX, ry + shiftY, rw, rh);
+                if (t < first){
+                    first = t;
                 }
             }
         }
-        return false;
+        return first;
     }
 
     /**
-     * Detection if the drawing rectangles of the bounds intersect
-     * @param rb1 the first bound to check for intersections
-     * @param rb2 the second bound to check for intersections
-     * @return if the drawing rectangles intersect
+     * Detection if any of the rectangles in the bounds intersect
+     * @param rb1 the first bounds to check intersection with
+     * @param rb2 the second bounds to check intersection with
+     * @return if any of the rectangles in the bounds intersect
      */
-    public static boolean drawRectIntersects(final RectBounds rb1, final RectBounds rb2){
-        for (Rectangle r1 : getAllMapRects(rb1.redrawRect)){
-            for (Rectangle r2 : getAllMapRects(rb2.redrawRect)){
-                if (r1.intersects(r2)){
+    public static boolean boundsIntersect(final RectBounds rb1, final RectBounds rb2){
+        int[] first = rb1.boundingRects;
+        int[] second = rb2.boundingRects;
+        for (int i = 0; i < first.length; i += RECT_SIZE){
+            for (int j = 0; j < second.length; j += RECT_SIZE){
+                if (rectsIntersect(first[i], first[i + 1], first[i + 2], first[i + 3],
+                        second[j], second[j + 1], second[j + 2], second[j + 3])){
                     return true;
                 }
             }
@@ -67,8 +140,12 @@ public class RectBounds {
         return false;
     }
 
-    private ArrayList<Rectangle> boundingRects = new ArrayList<>();
-    private Rectangle redrawRect;
+    // packed x, y, width, height of each bounding rectangle
+    private final int[] boundingRects;
+    private final int redrawX;
+    private final int redrawY;
+    private final int redrawWidth;
+    private final int redrawHeight;
 
     /**
      * Sets the bounding rectangles and the redrawing rectangle
@@ -76,12 +153,47 @@ public class RectBounds {
      * @param redraw the rectangle that represents the area that must be redrawn to cover the entire object
      */
     public RectBounds(final ArrayList<Rectangle> bounds, final Rectangle redraw){
-        for (Rectangle r : bounds){
-            boundingRects.add(new Rectangle(r.x, r.y, r.width, r.height));
+        boundingRects = new int[bounds.size() * RECT_SIZE];
+        for (int i = 0; i < bounds.size(); i++){
+            Rectangle r = bounds.get(i);
+            boundingRects[i * RECT_SIZE] = r.x;
+            boundingRects[i * RECT_SIZE + 1] = r.y;
+            boundingRects[i * RECT_SIZE + 2] = r.width;
+            boundingRects[i * RECT_SIZE + 3] = r.height;
         }
-        redrawRect = new Rectangle(redraw.x, redraw.y, redraw.width, redraw.height);
+        redrawX = redraw.x;
+        redrawY = redraw.y;
+        redrawWidth = redraw.width;
+        redrawHeight = redraw.height;
+    }
+
+    /**
+     * Sets a single bounding rectangle and the redrawing rectangle without going through Rectangle objects
+     * @param x x coordinate of the bounding rectangle
+     * @param y y coordinate of the bounding rectangle
+     * @param width width of the bounding rectangle
+     * @param height height of the bounding rectangle
+     * @param redrawX x coordinate of the area that must be redrawn to cover the entire object
+     * @param redrawY y coordinate of the redraw area
+     * @param redrawWidth width of the redraw area
+     * @param redrawHeight height of the redraw area
+     */
+    public RectBounds(final int x, final int y, final int width, final int height,
+                      final int redrawX, final int redrawY, final int redrawWidth, final int redrawHeight){
+        boundingRects = new int[]{x, y, width, height};
+        this.redrawX = redrawX;
+        this.redrawY = redrawY;
+        this.redrawWidth = redrawWidth;
+        this.redrawHeight = redrawHeight;
     }
 
-    public Rectangle getRedrawRect(){return redrawRect;}
-    public ArrayList<Rectangle> getBoundingRects(){return boundingRects;}
+    public int getRedrawX(){return redrawX;}
+    public int getRedrawY(){return redrawY;}
+    public int getRedrawWidth(){return redrawWidth;}
+    public int getRedrawHeight(){return redrawHeight;}
+    public int getNumBoundingRects(){return boundingRects.length / RECT_SIZE;}
+    public int getBoundX(final int index){return boundingRects[index * RECT_SIZE];}
+    public int getBoundY(final int index){return boundingRects[index * RECT_SIZE + 1];}
+    public int getBoundWidth(final int index){return boundingRects[index * RECT_SIZE + 2];}
+    public int getBoundHeight(final int index){return boundingRects[index * RECT_SIZE + 3];}
 }
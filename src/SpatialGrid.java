@@ -0,0 +1,131 @@
+import java.util.Arrays;
+
+/**
+ * A grid over the map holding which items, given as indices, cover each cell, used to find the items in an area
+ * without checking every item. An item covering several cells is held by each of them, and areas hanging over
+ * the sides of the map wrap around
+ */
+public class SpatialGrid {
+
+    private static final int NONE = -1;
+
+    private final int cellSize;  // smallest size of a cell, the cells are stretched to evenly divide the map
+    private int columns;
+    private int rows;
+    // each cell holds its first entry, and each entry holds its item and the next entry in the same cell
+    private int[] cellFirst = new int[0];
+    private int[] entryItem = new int[64];
+    private int[] entryNext = new int[64];
+    private int numEntries = 0;
+    // the last query each item was found by, so an item in several cells is only returned once
+    private int[] lastQuery = new int[64];
+    private int query = 0;
+
+    /**
+     * @param cellSize the smallest size of a cell
+     */
+    public SpatialGrid(final int cellSize){
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Removes every item, and resizes the grid if the size of the map has changed
+     */
+    public void clear(){
+        int newColumns = Math.max(Map.WIDTH / cellSize, 1);
+        int newRows = Math.max(Map.HEIGHT / cellSize, 1);
+        if (newColumns != columns || newRows != rows){
+            columns = newColumns;
+            rows = newRows;
+            cellFirst = new int[columns * rows];
+        }
+        Arrays.fill(cellFirst, NONE);
+        numEntries = 0;
+    }
+
+    /**
+     * Adds an item to every cell the area touches
+     * @param item the index of the item, at least 0
+     * @param x x coordinate of the area, may be outside the map
+     * @param y y coordinate of the area, may be outside the map
+     * @param width width of the area
+     * @param height height of the area
+     */
+    public void insert(final int item, final int x, final int y, final int width, final int height){
+        if (width <= 0 || height <= 0){
+            return;
+        }
+        if (item >= lastQuery.length){
+            lastQuery = Arrays.copyOf(lastQuery, Math.max(item + 1, lastQuery.length * 2));
+        }
+        int firstColumn = getColumn(x);
+        int numColumns = Math.min(getColumn(x + width - 1) - firstColumn + 1, columns);
+        int firstRow = getRow(y);
+        int numRows = Math.min(getRow(y + height - 1) - firstRow + 1, rows);
+        for (int r = 0; r < numRows; r++){
+            int row = Math.floorMod(firstRow + r, rows);
+            for (int c = 0; c < numColumns; c++){
+                int cell = row * columns + Math.floorMod(firstColumn + c, columns);
+                if (numEntries == entryItem.length){
+                    entryItem = Arrays.copyOf(entryItem, numEntries * 2);
+                    entryNext = Arrays.copyOf(entryNext, numEntries * 2);
+                }
+                entryItem[numEntries] = item;
+                entryNext[numEntries] = cellFirst[cell];
+                cellFirst[cell] = numEntries;
+                numEntries++;
+            }
+        }
+    }
+
+    /**
+     * Finds the items in the cells the area touches, which may include items near but not in the area
+     * @param x x coordinate of the area, may be outside the map
+     * @param y y coordinate of the area, may be outside the map
+     * @param width width of the area
+     * @param height height of the area
+     * @param found filled with the items found, in increasing order, must be large enough for every item
+     * @return the number of items found
+     */
+    public int query(final int x, final int y, final int width, final int height, final int[] found){
+        if (width <= 0 || height <= 0){
+            return 0;
+        }
+        query++;
+        int numFound = 0;
+        int firstColumn = getColumn(x);
+        int numColumns = Math.min(getColumn(x + width - 1) - firstColumn + 1, columns);
+        int firstRow = getRow(y);
+        int numRows = Math.min(getRow(y + height - 1) - firstRow + 1, rows);
+        for (int r = 0; r < numRows; r++){
+            int row = Math.floorMod(firstRow + r, rows);
+            for (int c = 0; c < numColumns; c++){
+                int cell = row * columns + Math.floorMod(firstColumn + c, columns);
+                for (int entry = cellFirst[cell]; entry != NONE; entry = entryNext[entry]){
+                    int item = entryItem[entry];
+                    if (lastQuery[item] != query){
+                        lastQuery[item] = query;
+                        found[numFound++] = item;
+                    }
+                }
+            }
+        }
+        // items are returned in order so they are drawn in the same order as without the grid
+        Arrays.sort(found, 0, numFound);
+        return numFound;
+    }
+
+    /**
+     * The column holding the given x coordinate, not wrapped around the map
+     */
+    private int getColumn(final int x){
+        return Math.floorDiv(x * columns, Map.WIDTH);
+    }
+
+    /**
+     * The row holding the given y coordinate, not wrapped around the map
+     */
+    private int getRow(final int y){
+        return Math.floorDiv(y * rows, Map.HEIGHT);
+    }
+}
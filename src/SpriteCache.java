@@ -0,0 +1,119 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An image drawn ahead of time at a fixed number of angles, so drawing it rotated is a plain copy. Each frame is a
+ * square with the anchor at its center, so every angle is drawn at the same offset from the top left of the element.
+ * Frames are shared between every map and player using the same image, and are drawn on a background thread when
+ * the cache is made, or when first asked for if the background thread has not reached them yet
+ */
+public class SpriteCache {
+
+    public static final int ANGLES = 64;  // number of angles in a full turn
+
+    // caches already made, by the name of their image
+    private static final ConcurrentHashMap<String, SpriteCache> CACHES = new ConcurrentHashMap<>();
+
+    /**
+     * The cache for the given image, making it if there is not one yet
+     * @param name the name the image is shared by, such as its file path
+     * @param image the image to rotate
+     * @param anchor the point in the image to rotate around
+     * @return the cache of the rotated image
+     */
+    public static SpriteCache get(final String name, final BufferedImage image, final Point anchor){
+        return CACHES.computeIfAbsent(name, key -> {
+            SpriteCache cache = new SpriteCache(image, anchor);
+            Thread preload = new Thread(cache::drawAllFrames, "sprite-cache-" + key);
+            preload.setDaemon(true);
+            preload.start();
+            return cache;
+        });
+    }
+
+    private final BufferedImage image;
+    private final int anchorX;
+    private final int anchorY;
+    private final int radius;  // farthest any pixel of the image is from the anchor, half of the size of each frame
+    private final AtomicReferenceArray<BufferedImage> frames = new AtomicReferenceArray<>(ANGLES);
+
+    /**
+     * @param image the image to rotate
+     * @param anchor the point in the image to rotate around
+     */
+    private SpriteCache(final BufferedImage image, final Point anchor){
+        this.image = image;
+        this.anchorX = anchor.x;
+        this.anchorY = anchor.y;
+        // the farthest corner from the anchor sets how large the rotated image can get
+        int farX = Math.max(anchorX, image.getWidth() - anchorX);
+        int farY = Math.max(anchorY, image.getHeight() - anchorY);
+        this.radius = (int) Math.ceil(Math.sqrt(farX * farX + farY * farY));
+    }
+
+    /**
+     * Draws every frame that has not been drawn yet
+     */
+    private void drawAllFrames(){
+        for (int i = 0; i < ANGLES; i++){
+            getFrame(i);
+        }
+    }
+
+    /**
+     * The frame closest to the given angle
+     * @param angle the angle, in radians, the image is rotated by
+     * @return the rotated image, with the anchor at its center
+     */
+    public BufferedImage getFrame(final double angle){
+        return getFrame(getFrameIndex(angle));
+    }
+
+    /**
+     * The frame at the given index, drawing it if it has not been drawn yet
+     * @param index the index of the frame, from 0 to ANGLES - 1
+     * @return the rotated image, with the anchor at its center
+     */
+    private BufferedImage getFrame(final int index){
+        BufferedImage frame = frames.get(index);
+        if (frame == null){
+            // another thread may be drawing the same frame, whichever finishes first is kept
+            frames.compareAndSet(index, null, drawFrame(index));
+            frame = frames.get(index);
+        }
+        return frame;
+    }
+
+    /**
+     * Draws the image rotated to the angle of the frame
+     * @param index the index of the frame
+     * @return the rotated image
+     */
+    private BufferedImage drawFrame(final int index){
+        BufferedImage frame = Surfaces.createImage(radius * 2, radius * 2, true);
+        Graphics2D g = frame.createGraphics();
+        // the frames are only drawn once, so use the smooth and slow way of rotating
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.rotate(index * 2 * Math.PI / ANGLES, radius, radius);
+        g.drawImage(image, radius - anchorX, radius - anchorY, null);
+        g.dispose();
+        return frame;
+    }
+
+    /**
+     * The index of the frame closest to the given angle
+     * @param angle the angle, in radians
+     * @return the index of the frame, from 0 to ANGLES - 1
+     */
+    public static int getFrameIndex(final double angle){
+        return Math.floorMod((int) Math.round(angle * ANGLES / (2 * Math.PI)), ANGLES);
+    }
+
+    // where to draw a frame, relative to the top left of the element
+    public int getOffsetX(){return anchorX - radius;}
+    public int getOffsetY(){return anchorY - radius;}
+    public int getFrameSize(){return radius * 2;}
+}
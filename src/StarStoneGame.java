@@ -1,4 +1,5 @@
 import java.util.ArrayList;
+import java.util.Random;
 
 /**
  * The Star Stone game, will go along with a GameServer
@@ -10,24 +11,33 @@ public class StarStoneGame implements GameInterface{
     public static final String PLAYER_LEFT = "PLAYER_LEFT";
     public static final String SET_SERVER_IP = "SERVER_IP";
     public static final String START_GAME = "START_GAME";
+    public static final String RANDOM_MAZE = "RANDOM_MAZE";  // added to START_GAME to play in a random maze
     public static final String PLAYER_TRANSLATE = "PLAYER_TRANSLATE";
     public static final String PLAYER_ROTATE = "PLAYER_ROTATE";
     public static final String PLAYER_SHOOT = "PLAYER_SHOOT";
+    public static final String PLAYER_INPUT = "PLAYER_INPUT";
+    public static final String INPUT_APPLIED = "INPUT_APPLIED";  // sent back with the sequence number of the input applied
+    // without input for this long, a player's keys are treated as let go, clients send a keepalive more often
+    private static final int INPUT_TIMEOUT = 2000;  // milliseconds
 
     private GameServer server;
     private ArrayList<StarStonePlayer> players = new ArrayList<>();
+    private ArrayList<PlayerInput> inputs = new ArrayList<>();  // the latest input of each player
     private boolean gameStarted = false;
     private Map map;
 
     @Override
     public void setServer(GameServer server) {
         this.server = server;
+        // the server only needs the player images, for the boxes bullets hit
+        Assets.preload(Player.SOLDIER_KNIFE_IMAGE_PATH, Player.SOLDIER_PISTOL_IMAGE_PATH, Player.SOLDIER_RIFLE_IMAGE_PATH);
     }
 
     @Override
     public boolean onPlayerConnected() {
         if (players.size() < Map.MAX_NUM_PLAYERS && !gameStarted){
             players.add(new StarStonePlayer());
+            inputs.add(new PlayerInput());
             return true;
         }
         return false;
@@ -35,8 +45,9 @@ public class StarStoneGame implements GameInterface{
 
     @Override
     public void onPlayerDisconnected(int index) {
-        System.out.println("Game recognizes that player at index " + index + " left");
+        Log.info("Game recognizes that player at index %d left", index);
         players.remove(index);
+        inputs.remove(index);
         server.broadcast(PLAYER_LEFT + GameServer.DELIMITER + index, index);
         // if all the players are gone, stop the server
         if (players.size() == 0){
@@ -65,46 +76,93 @@ public class StarStoneGame implements GameInterface{
         }
         // a player is leaving
         else if (message.startsWith(PLAYER_LEFT)){
-            System.out.println("Player at index " + index + " requested to leave");
+            Log.info("Player at index %d requested to leave", index);
             server.removeClient(index);
         }
         // if the game is started
         else if (message.startsWith(START_GAME)){
-            map = new Map(players);
-            // tell all players to start the game
-            server.broadcast(START_GAME, -1);
+            // a random maze is only used when asked for, otherwise the layout file is used
+            if (message.equals(START_GAME + GameServer.DELIMITER + RANDOM_MAZE)){
+                // every player makes the same maze from the seed
+                long seed = new Random().nextLong();
+                map = new Map(players, MazeGenerator.generate(seed));
+                // tell all players to start the game
+                server.broadcast(START_GAME + GameServer.DELIMITER + seed, -1);
+            }
+            else {
+                map = new Map(players);
+                server.broadcast(START_GAME, -1);
+            }
             // this will make sure players do not join partway through
             gameStarted = true;
         }
-        // player is attempting to translate
-        else if (message.startsWith(PLAYER_TRANSLATE)){
-            String[] info = message.split(GameServer.DELIMITER);
-            int dx = Integer.valueOf(info[1]);
-            int dy = Integer.valueOf(info[2]);
+        // the latest input of a player, applied on the next update
+        else if (message.startsWith(PLAYER_INPUT)){
+            inputs.get(index).decode(message, System.currentTimeMillis());
+        }
+        // time to update all non-player elements
+        else if (message.startsWith(GameServer.END_PLAYER_UPDATE)){
+            long time = System.currentTimeMillis();
+            for (int i = 0; i < players.size(); i++){
+                applyInput(i, time);
+            }
+            map.handleMapElements(true);
+        }
+    }
+
+    /**
+     * Moves, turns, and fires for a player from their latest input, telling every player about each change
+     * @param index the index of the player
+     * @param time the current time, in milliseconds
+     */
+    private void applyInput(final int index, final long time){
+        PlayerInput input = inputs.get(index);
+        StarStonePlayer player = players.get(index);
+        // let the client know which input this update used, so it can time the round trip
+        if (input.takeSequenceChange()){
+            server.sendMessage(index, INPUT_APPLIED + GameServer.DELIMITER + input.getSequence());
+        }
+        // taken even when the player is not active, so presses from before do not fire later
+        boolean turned = input.takeAngleChange();
+        boolean fired = input.takeFire();
+        if (!player.isActive()){
+            return;
+        }
+        // translation with the keys, unless the player has stopped sending input
+        if (time - input.getReceivedTime() < INPUT_TIMEOUT){
+            float dx = 0;
+            float dy = 0;
+            if (input.isPressed(PlayerInput.RIGHT)){
+                dx += player.getSpeed();
+            }
+            if (input.isPressed(PlayerInput.LEFT)){
+                dx -= player.getSpeed();
+            }
+            if (input.isPressed(PlayerInput.UP)){
+                dy -= player.getSpeed();
+            }
+            if (input.isPressed(PlayerInput.DOWN)){
+                dy += player.getSpeed();
+            }
             // if the translation was successful, broadcast this to the other players
-            if(map.translatePlayer(index, dx, dy, true)){
-                // broadcast to everyone
-                server.broadcast(PLAYER_TRANSLATE + GameServer.DELIMITER + index + GameServer.DELIMITER + dx + GameServer.DELIMITER + dy, -1);
+            if ((dx != 0 || dy != 0) && map.translatePlayer(index, (int) dx, (int) dy, true)){
+                server.broadcast(PLAYER_TRANSLATE + GameServer.DELIMITER + index + GameServer.DELIMITER + (int) dx + GameServer.DELIMITER + (int) dy, -1);
             }
         }
-        // a player is rotating
-        else if (message.startsWith(PLAYER_ROTATE)){
-            String[] info = message.split(GameServer.DELIMITER);
-            double angle = Double.valueOf(info[1]);
-            // no need to check because rotation will not cause conflicts
+        // no need to check because rotation will not cause conflicts
+        if (turned){
+            double angle = input.getAngle();
             map.rotatePlayer(index, angle, true);
             server.broadcast(PLAYER_ROTATE + GameServer.DELIMITER + index + GameServer.DELIMITER + angle, -1);
         }
-        // a player is shooting
-        else if (message.startsWith(PLAYER_SHOOT)){
-            System.out.println("Shot for player at index " + index);
-            // broadcast the bullet creation to everyone
-            map.playerShootBullet(index);
-            server.broadcast(PLAYER_SHOOT + GameServer.DELIMITER + index, -1);
-        }
-        // time to update all non-player elements
-        else if (message.startsWith(GameServer.END_PLAYER_UPDATE)){
-            map.handleMapElements(true);
+        if (fired){
+            Log.debug("Shot for player at index %d", index);
+            // the shot is checked against what the player saw, and everyone checks it the same way
+            int rewindTicks = map.getRewindTicks(input.getTick());
+            // only shots the player had reloaded for are sent, clients apply them without checking again
+            if (map.playerShootBullet(index, rewindTicks, true)){
+                server.broadcast(PLAYER_SHOOT + GameServer.DELIMITER + index + GameServer.DELIMITER + rewindTicks, -1);
+            }
         }
     }
 }
@@ -1,12 +1,8 @@
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Line2D;
 import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
-import java.util.ArrayList;
 
 /**
  * Represents the player in the map
@@ -21,7 +17,9 @@ public class StarStonePlayer implements MapElement{
     private String name;
     private String imageFilePath;
     private RectBounds bounds;
+    private Bounds hull;  // rotated box around the visible part of the image, used for bullet hits
     private BufferedImage image;
+    private SpriteCache sprites;  // the image drawn at each angle, made the first time the player is drawn
     private BufferedImage healthBarImage;
     private Point topLeft = new Point(0,0);  // top left
     private double angle = 0;  // radians
@@ -52,7 +50,10 @@ public class StarStonePlayer implements MapElement{
         createBounds();
     }
     public void setSpeed(final float s){speed = s;}
-    public void setAngle(final double angle){this.angle = angle;}
+    public void setAngle(final double angle){
+        this.angle = angle;
+        updateHull();
+    }
 
     /**
      * Initializes the player with all of the information, sets setUp to true
@@ -71,7 +72,19 @@ public class StarStonePlayer implements MapElement{
     }
 
     public RectBounds getBounds(){return bounds;}
+    public Bounds getHull(){return hull;}
     public BufferedImage getImage(){return image;}
+
+    /**
+     * The image drawn ahead of time at each angle, shared with every player using the same image
+     * @return the cache of rotated images, null if the image could not be loaded
+     */
+    public SpriteCache getSprites(){
+        if (sprites == null && image != null){
+            sprites = SpriteCache.get(imageFilePath, image, anchor);
+        }
+        return sprites;
+    }
     public BufferedImage getHealthBarImage(){return healthBarImage;}
     public String getName(){return name;}
     public boolean isSetUp(){return setUp;}
@@ -83,14 +96,10 @@ public class StarStonePlayer implements MapElement{
     public int getHealth(){return health;}
 
     /**
-     * Loads the image using the file path
+     * Gets the image using the file path, shared with every player using the same image
      */
     private void loadImage(){
-        try {
-            image = ImageIO.read(new File(imageFilePath));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        image = Assets.getImage(imageFilePath);
         if (imageFilePath.equals(Player.SOLDIER_RIFLE_IMAGE_PATH)){
             innerWidth = 40;
             outerWidth = 32;
@@ -106,11 +115,53 @@ public class StarStonePlayer implements MapElement{
             outerWidth = 18;
             anchor = new Point(20, 20);
         }
+        createHull();
+    }
+
+    /**
+     * Creates the rotated box around the part of the image that is not transparent
+     */
+    private void createHull(){
+        if (image == null){
+            hull = new Bounds(0, 0, innerWidth, innerWidth, anchor.x, anchor.y);
+            return;
+        }
+        int minX = image.getWidth();
+        int minY = image.getHeight();
+        int maxX = -1;
+        int maxY = -1;
+        for (int y = 0; y < image.getHeight(); y++){
+            for (int x = 0; x < image.getWidth(); x++){
+                // alpha is the top byte of the pixel
+                if ((image.getRGB(x, y) >>> 24) != 0){
+                    minX = Math.min(minX, x);
+                    minY = Math.min(minY, y);
+                    maxX = Math.max(maxX, x);
+                    maxY = Math.max(maxY, y);
+                }
+            }
+        }
+        if (maxX < 0){
+            hull = new Bounds(0, 0, innerWidth, innerWidth, anchor.x, anchor.y);
+        }
+        else {
+            hull = new Bounds(minX, minY, maxX - minX + 1, maxY - minY + 1, anchor.x, anchor.y);
+        }
+        updateHull();
+    }
+
+    /**
+     * Moves and turns the hull to match the player
+     */
+    private void updateHull(){
+        if (hull != null){
+            hull.setPose(topLeft.x, topLeft.y, angle);
+        }
     }
 
     private void createHealthBar(){
         int healthBarWidth = (int)(((float) health / MAX_HEALTH) * innerWidth);
-        healthBarImage = new BufferedImage(healthBarWidth, HEALTH_BAR_HEIGHT, Map.IMAGE_TYPE);
+        healthBarImage = Surfaces.createImage(healthBarWidth, HEALTH_BAR_HEIGHT, true);
         Graphics g = healthBarImage.getGraphics();
         g.setColor(Color.GREEN);
         g.fillRect(0, 0 , healthBarWidth, HEALTH_BAR_HEIGHT);
@@ -153,34 +204,32 @@ public class StarStonePlayer implements MapElement{
         }
         int shootX = getTopLeft().x + innerWidth / 2 + (int)(Math.cos(angle + angleOffset) * distanceFromCenter);
         int shootY = getTopLeft().y + innerWidth / 2 + (int)(Math.sin(angle + angleOffset) * distanceFromCenter);
-        return new Point(shootX - (Bullet.WIDTH / 2), shootY - (Bullet.WIDTH / 2));
+        return new Point(shootX - (BulletStore.WIDTH / 2), shootY - (BulletStore.WIDTH / 2));
     }
 
     /**
-     * Creates a bullet that represents what the player shoots, returns null if a bullet shot can not be made
-     * @return the bullet that is shot by the player, null if no bullet could be made
+     * Checks if it has been long enough since the last shot for the player to shoot, if so the shot is counted.
+     * The bullet itself should be placed at getShootLocation()
+     * @return whether or not the player can shoot a bullet
      */
-    public Bullet shootBullet(){
-        Bullet b = null;
+    public boolean shootBullet(){
         // if it has been long enough since the last fire
         long currentTime = System.currentTimeMillis();
         if (currentTime - lastBulletFireTime >= BULLET_RELOAD_TIME){
             lastBulletFireTime = currentTime;
-            Point shootLocation = getShootLocation();
-            b = new Bullet(shootLocation, angle);
+            return true;
         }
-        return b;
+        return false;
     }
 
     /**
      * Updates the bounds to match the current image
      */
     private void createBounds(){
-        Rectangle centerBound = new Rectangle(topLeft.x, topLeft.y, innerWidth, innerWidth);
-        ArrayList<Rectangle> boundingRects = new ArrayList<>();
-        boundingRects.add(centerBound);
-        Rectangle drawBounds = new Rectangle(topLeft.x - outerWidth, topLeft.y - outerWidth, outerWidth * 2 + innerWidth, outerWidth * 2 + innerWidth);
-        bounds = new RectBounds(boundingRects, drawBounds);
+        int drawWidth = outerWidth * 2 + innerWidth;
+        bounds = new RectBounds(topLeft.x, topLeft.y, innerWidth, innerWidth,
+                topLeft.x - outerWidth, topLeft.y - outerWidth, drawWidth, drawWidth);
+        updateHull();
     }
 
     /**
@@ -200,9 +249,9 @@ public class StarStonePlayer implements MapElement{
 
     /**
      * Reduces health and possibly makes the player inactive after a bullet has collided with the player
-     * @param b the bullet that has collided with the player
+     * @param damage the damage of the bullet that has collided with the player
      */
-    public void onCollide(final Bullet b){
-        setHealth(health - b.getDamage());
+    public void onCollide(final int damage){
+        setHealth(health - damage);
     }
 }
@@ -0,0 +1,65 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Creates the images the game draws with in the format of the screen, so copying between them and onto the screen
+ * does not convert every pixel. When there is no screen, such as on a headless server, images use the integer pixel
+ * formats Java2D copies fastest in software instead
+ */
+public class Surfaces {
+
+    // used when there is no screen, the premultiplied format blends without dividing by alpha
+    private static final int OPAQUE_TYPE = BufferedImage.TYPE_INT_RGB;
+    private static final int TRANSLUCENT_TYPE = BufferedImage.TYPE_INT_ARGB_PRE;
+
+    // the configuration of the screen, null if there is no screen
+    private static final GraphicsConfiguration CONFIGURATION = findConfiguration();
+
+    /**
+     * Finds the configuration of the default screen
+     * @return the configuration, null if there is no screen
+     */
+    private static GraphicsConfiguration findConfiguration(){
+        if (GraphicsEnvironment.isHeadless()){
+            return null;
+        }
+        try {
+            return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+        } catch (HeadlessException e){
+            return null;
+        }
+    }
+
+    /**
+     * Creates an image in the format of the screen
+     * @param width width of the image
+     * @param height height of the image
+     * @param translucent whether or not the image has transparent pixels, opaque images copy faster
+     * @return the new image, cleared to transparent or black
+     */
+    public static BufferedImage createImage(final int width, final int height, final boolean translucent){
+        if (CONFIGURATION == null){
+            return new BufferedImage(width, height, translucent ? TRANSLUCENT_TYPE : OPAQUE_TYPE);
+        }
+        return CONFIGURATION.createCompatibleImage(width, height, translucent ? Transparency.TRANSLUCENT : Transparency.OPAQUE);
+    }
+
+    /**
+     * Copies a loaded image into the format of the screen, keeping its transparency
+     * @param image the image to copy, such as one read from a file
+     * @return the copy, or null if the image is null
+     */
+    public static BufferedImage toCompatible(final BufferedImage image){
+        if (image == null){
+            return null;
+        }
+        BufferedImage copy = createImage(image.getWidth(), image.getHeight(), image.getTransparency() != Transparency.OPAQUE);
+        Graphics g = copy.getGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return copy;
+    }
+
+    // the configuration of the screen, null if there is no screen
+    public static GraphicsConfiguration getConfiguration(){return CONFIGURATION;}
+}
@@ -0,0 +1,158 @@
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * The drawn map split into square tiles, where only the tiles that have been shown recently are kept. A tile is
+ * drawn the first time it is needed, and when the cache is full the tile shown longest ago is dropped and its image
+ * reused. Memory use depends on the size of the view rather than the size of the map
+ */
+public class TileCache {
+
+    public static final int TILE_SIZE = 256;
+    // most tiles kept at once, enough for a view to move a tile in any direction without drawing the same tile twice
+    public static final int MAX_TILES = 32;
+
+    private static final int NO_SLOT = -1;
+    private static final int NO_TILE = -1;
+    private static final AffineTransform IDENTITY = new AffineTransform();
+
+    /**
+     * Draws an area of the map
+     */
+    public interface Renderer {
+        /**
+         * Draws everything in the area of the map, without drawing outside of it
+         * @param g the graphics to draw with, in map coordinates
+         * @param x x coordinate of the area, inside the map
+         * @param y y coordinate of the area, inside the map
+         * @param width width of the area
+         * @param height height of the area
+         */
+        void drawArea(Graphics2D g, int x, int y, int width, int height);
+    }
+
+    private final Renderer renderer;
+    private int columns;
+    private int rows;
+    private int[] slotOfTile = new int[0];  // the slot holding each tile, NO_SLOT if the tile is not kept
+    // each slot holds the image of one tile, which tile it is, and when it was last shown
+    private final BufferedImage[] images = new BufferedImage[MAX_TILES];
+    private final Graphics2D[] graphics = new Graphics2D[MAX_TILES];
+    private final int[] tileInSlot = new int[MAX_TILES];
+    private final long[] lastUsed = new long[MAX_TILES];
+    private long useCount = 0;
+
+    /**
+     * @param renderer draws the areas of the map covered by tiles
+     */
+    public TileCache(final Renderer renderer){
+        this.renderer = renderer;
+        Arrays.fill(tileInSlot, NO_TILE);
+    }
+
+    /**
+     * Drops every tile and sizes the grid of tiles to the map, used when the map is made
+     */
+    public void reset(){
+        columns = (Map.WIDTH + TILE_SIZE - 1) / TILE_SIZE;
+        rows = (Map.HEIGHT + TILE_SIZE - 1) / TILE_SIZE;
+        slotOfTile = new int[columns * rows];
+        Arrays.fill(slotOfTile, NO_SLOT);
+        Arrays.fill(tileInSlot, NO_TILE);
+    }
+
+    /**
+     * Draws the area again in every kept tile it touches. Tiles that are not kept are drawn when they are next shown
+     * @param x x coordinate of the area, inside the map
+     * @param y y coordinate of the area, inside the map
+     * @param width width of the area, the area does not go past the right side of the map
+     * @param height height of the area, the area does not go past the bottom of the map
+     */
+    public void redraw(final int x, final int y, final int width, final int height){
+        int lastColumn = (x + width - 1) / TILE_SIZE;
+        int lastRow = (y + height - 1) / TILE_SIZE;
+        for (int row = y / TILE_SIZE; row <= lastRow; row++){
+            for (int column = x / TILE_SIZE; column <= lastColumn; column++){
+                int slot = slotOfTile[row * columns + column];
+                if (slot != NO_SLOT){
+                    // only the part of the area inside this tile is drawn
+                    int left = Math.max(x, column * TILE_SIZE);
+                    int top = Math.max(y, row * TILE_SIZE);
+                    int right = Math.min(x + width, (column + 1) * TILE_SIZE);
+                    int bottom = Math.min(y + height, (row + 1) * TILE_SIZE);
+                    renderer.drawArea(graphics[slot], left, top, right - left, bottom - top);
+                }
+            }
+        }
+    }
+
+    /**
+     * Draws a rectangle of the map at the top left of the graphics, wrapping around the map, drawing any tiles that
+     * are not kept yet
+     * @param g the graphics to draw on
+     * @param x x coordinate of the rectangle, may be outside the map
+     * @param y y coordinate of the rectangle, may be outside the map
+     * @param width width of the rectangle
+     * @param height height of the rectangle
+     */
+    public void draw(final Graphics g, final int x, final int y, final int width, final int height){
+        int drawnY = 0;
+        while (drawnY < height){
+            int mapY = Math.floorMod(y + drawnY, Map.HEIGHT);
+            int row = mapY / TILE_SIZE;
+            // stop at the bottom of the tile or of the map, whichever is first
+            int spanY = Math.min(height - drawnY, Math.min((row + 1) * TILE_SIZE, Map.HEIGHT) - mapY);
+            int drawnX = 0;
+            while (drawnX < width){
+                int mapX = Math.floorMod(x + drawnX, Map.WIDTH);
+                int column = mapX / TILE_SIZE;
+                int spanX = Math.min(width - drawnX, Math.min((column + 1) * TILE_SIZE, Map.WIDTH) - mapX);
+                BufferedImage tile = getTile(column, row);
+                int tileX = mapX - column * TILE_SIZE;
+                int tileY = mapY - row * TILE_SIZE;
+                g.drawImage(tile, drawnX, drawnY, drawnX + spanX, drawnY + spanY,
+                        tileX, tileY, tileX + spanX, tileY + spanY, null);
+                drawnX += spanX;
+            }
+            drawnY += spanY;
+        }
+    }
+
+    /**
+     * The image of a tile, drawing it into the slot used longest ago if it is not kept
+     * @param column the column of the tile
+     * @param row the row of the tile
+     * @return the image of the tile, with the top left of the tile at its top left
+     */
+    private BufferedImage getTile(final int column, final int row){
+        int tile = row * columns + column;
+        int slot = slotOfTile[tile];
+        if (slot == NO_SLOT){
+            slot = 0;
+            for (int i = 1; i < MAX_TILES; i++){
+                if (lastUsed[i] < lastUsed[slot]){
+                    slot = i;
+                }
+            }
+            if (tileInSlot[slot] != NO_TILE){
+                slotOfTile[tileInSlot[slot]] = NO_SLOT;
+            }
+            if (images[slot] == null){
+                images[slot] = Surfaces.createImage(TILE_SIZE, TILE_SIZE, false);
+                graphics[slot] = images[slot].createGraphics();
+            }
+            tileInSlot[slot] = tile;
+            slotOfTile[tile] = slot;
+            // draw with map coordinates, moved so the top left of the tile is the top left of the image
+            graphics[slot].setTransform(IDENTITY);
+            graphics[slot].translate(-column * TILE_SIZE, -row * TILE_SIZE);
+            int width = Math.min(TILE_SIZE, Map.WIDTH - column * TILE_SIZE);
+            int height = Math.min(TILE_SIZE, Map.HEIGHT - row * TILE_SIZE);
+            renderer.drawArea(graphics[slot], column * TILE_SIZE, row * TILE_SIZE, width, height);
+        }
+        lastUsed[slot] = ++useCount;
+        return images[slot];
+    }
+}
@@ -0,0 +1,68 @@
+import java.awt.*;
+import java.util.ArrayList;
+
+/**
+ * Checks that a player shooting in every direction never hits themselves. Each soldier stands alone in an open map
+ * and fires, on time or from behind the server, and the bullet is followed until it is well clear of the shooter. Run with the game classes on the
+ * classpath, exits with status 1 if any shot hurt its shooter
+ */
+public class SelfHitCheck {
+
+    private static final int DIRECTIONS = 16;
+    private static final int TICKS_PER_SHOT = 10;  // updates to follow each bullet, far enough to leave the shooter
+    private static final int REWIND_TICKS = 3;  // how far behind the server the shooters are on every other shot
+    private static final long RELOAD_WAIT = 1050;  // milliseconds, a little over the reload time of a player
+
+    public static void main(String[] args) throws InterruptedException {
+        String[] images = {Player.SOLDIER_PISTOL_IMAGE_PATH, Player.SOLDIER_RIFLE_IMAGE_PATH, Player.SOLDIER_KNIFE_IMAGE_PATH};
+        // an open map with the soldiers far enough apart that no bullet reaches another soldier while it is followed
+        ArrayList<Point> spawns = new ArrayList<>();
+        for (int i = 0; i < images.length; i++){
+            spawns.add(new Point(4 + i * 10, 4));
+        }
+        Layout open = Layout.fromWallCells(40, 10, MazeGenerator.SCALE, new long[(40 * 10 + 63) / 64], spawns, new ArrayList<>());
+        ArrayList<StarStonePlayer> players = new ArrayList<>();
+        for (String image : images){
+            players.add(createPlayer(image));
+        }
+        int failures = 0;
+        for (int direction = 0; direction < DIRECTIONS; direction++){
+            double angle = direction * 2 * Math.PI / DIRECTIONS;
+            Thread.sleep(RELOAD_WAIT);
+            // a new map each time, so no bullet from an earlier shot is still flying
+            Map map = new Map(players, open);
+            for (int t = 0; t < REWIND_TICKS; t++){
+                map.handleMapElements(true);
+            }
+            // every other shot is fired from behind, so it is caught up through the recorded updates
+            int rewindTicks = direction % 2 == 0 ? 0 : map.getRewindTicks(map.getTick() - REWIND_TICKS);
+            for (int i = 0; i < players.size(); i++){
+                map.rotatePlayer(i, angle, true);
+                map.playerShootBullet(i, rewindTicks, true);
+            }
+            for (int t = 0; t < TICKS_PER_SHOT; t++){
+                map.handleMapElements(true);
+            }
+            for (int i = 0; i < players.size(); i++){
+                if (players.get(i).getHealth() != StarStonePlayer.MAX_HEALTH){
+                    System.out.println(images[i] + " hit themselves shooting at angle " + angle);
+                    players.set(i, createPlayer(images[i]));
+                    failures++;
+                }
+            }
+        }
+        System.out.println(failures == 0 ? "No player hit themselves" : failures + " shots hit their shooter");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    /**
+     * Makes a soldier at full health, named after its image
+     * @param image the path of the image of the soldier
+     * @return the set up player
+     */
+    private static StarStonePlayer createPlayer(final String image){
+        StarStonePlayer p = new StarStonePlayer();
+        p.construct(image + "," + image + ",0,0");
+        return p;
+    }
+}